@@ -0,0 +1,40 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Temporary directories for benchmark fixtures.
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Creates a temporary directory, within <code>benchmark.dir</code> if set (e.g. to benchmark a particular
+     * filesystem) and otherwise the system temporary directory.
+     */
+    static Path createDirectory(String prefix) throws IOException {
+        String parent = System.getProperty("benchmark.dir");
+        if (parent == null) {
+            return Files.createTempDirectory(prefix);
+        }
+        Files.createDirectories(Path.of(parent));
+        return Files.createTempDirectory(Path.of(parent), prefix);
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computes the checksums of an RPM in a single read, as is done for those RPMs not already checksummed by the zip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({ "67108864" })
+    public int rpmSize;
+
+    @Param({ "SHA-256", "SHA-1,MD5", "SHA-1,MD5,SHA-256" })
+    public String algorithms;
+
+    private Path directory;
+
+    private Path rpm;
+
+    private List<String> algorithmList;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory("checksum-benchmark");
+        rpm = FixtureRPMs.create(directory, 1, rpmSize, 1).get(0);
+        algorithmList = Arrays.asList(algorithms.split(","));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public Map<String, String> compute() throws IOException {
+        return Checksums.compute(rpm, algorithmList);
+    }
+}
@@ -0,0 +1,114 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Locates the built RPMs within a build directory containing a large buildroot and other deep trees, either by
+ * searching it or via the manifest written by the package goal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FindRPMsBenchmark {
+
+    /**
+     * The depth of each generated tree.
+     */
+    @Param({ "6" })
+    public int depth;
+
+    /**
+     * The number of subdirectories of each directory.
+     */
+    @Param({ "4" })
+    public int breadth;
+
+    /**
+     * The number of files within each directory.
+     */
+    @Param({ "8" })
+    public int files;
+
+    @Param({ "32" })
+    public int rpmCount;
+
+    private Path directory;
+
+    private BaseMojo mojo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory("find-benchmark");
+        // The buildroot is skipped by the search; the other tree is not.
+        createTree(directory.resolve("build/BUILDROOT"), depth);
+        createTree(directory.resolve("classes"), depth);
+        List<Path> rpms = FixtureRPMs.create(directory.resolve("noarch"), rpmCount, 1024, 1);
+        RPMManifest.create(
+                "benchmark",
+                BuildMode.ALL,
+                false,
+                directory,
+                rpms.stream().map(Path::toFile).toList(),
+                RPMManifest.DEFAULT_ALGORITHMS,
+                Map.of())
+                .write(directory.resolve(RPMManifest.FILENAME));
+
+        mojo = new BaseMojo() {
+            @Override
+            public void execute() {
+            }
+        };
+        mojo.setLog(new QuietLog());
+        mojo.outputDirectory = directory.toFile();
+    }
+
+    private void createTree(Path root, int remaining) throws IOException {
+        Files.createDirectories(root);
+        for (int i = 0; i < files; i++) {
+            Files.createFile(root.resolve("file" + i + ".txt"));
+        }
+        if (remaining > 0) {
+            for (int i = 0; i < breadth; i++) {
+                createTree(root.resolve("dir" + i), remaining - 1);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public List<File> search() throws IOException {
+        return mojo.findRPMs(directory);
+    }
+
+    @Benchmark
+    public List<File> manifest() throws IOException {
+        return mojo.findBuiltRPMs();
+    }
+}
@@ -0,0 +1,114 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic RPMs for the benchmarks so that they need neither rpmbuild nor network access. Each has a valid
+ * lead, signature and header (enough for the plugin to identify the package and its payload compression) followed by
+ * a payload of random bytes, which like a real compressed payload does not compress further. The payload is not a
+ * valid archive so these cannot be extracted.
+ */
+final class FixtureRPMs {
+
+    private static final int TYPE_STRING = 6;
+
+    private FixtureRPMs() {
+    }
+
+    /**
+     * Writes RPMs named <code>fixture&lt;n&gt;-1.0-1.noarch.rpm</code>, with payloads of the given size, into the
+     * directory.
+     *
+     * @param directory the directory to write to, which is created if necessary
+     * @param count the number of RPMs
+     * @param payloadSize the size of each payload in bytes
+     * @param seed the seed for the payload content so that runs are repeatable
+     * @return the RPMs
+     */
+    static List<Path> create(Path directory, int count, int payloadSize, long seed) throws IOException {
+        Files.createDirectories(directory);
+        Random random = new Random(seed);
+        List<Path> rpms = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path rpm = directory.resolve("fixture" + i + "-1.0-1.noarch.rpm");
+            try (OutputStream out = Files.newOutputStream(rpm)) {
+                write(out, "fixture" + i, payloadSize, random);
+            }
+            rpms.add(rpm);
+        }
+        return rpms;
+    }
+
+    private static void write(OutputStream out, String name, int payloadSize, Random random) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        byte[] lead = new byte[RPMPackage.LEAD_SIZE];
+        lead[0] = (byte) 0xed;
+        lead[1] = (byte) 0xab;
+        lead[2] = (byte) 0xee;
+        lead[3] = (byte) 0xdb;
+        lead[4] = 3;
+        byte[] leadName = (name + "-1.0-1").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(leadName, 0, lead, 10, Math.min(leadName.length, 65));
+        // Operating system (Linux) and signature type (header style).
+        lead[77] = 1;
+        lead[79] = 5;
+        data.write(lead);
+
+        byte[] signature = header(Map.of());
+        data.write(signature);
+        data.write(new byte[(8 - (signature.length - 16) % 8) % 8]);
+
+        Map<Integer, String> tags = new LinkedHashMap<>();
+        tags.put(RPMHeader.TAG_NAME, name);
+        tags.put(RPMHeader.TAG_VERSION, "1.0");
+        tags.put(RPMHeader.TAG_RELEASE, "1");
+        tags.put(RPMHeader.TAG_ARCH, "noarch");
+        tags.put(RPMHeader.TAG_SOURCERPM, name + "-1.0-1.src.rpm");
+        tags.put(RPMHeader.TAG_PAYLOADFORMAT, "cpio");
+        tags.put(RPMHeader.TAG_PAYLOADCOMPRESSOR, "gzip");
+        data.write(header(tags));
+
+        byte[] buffer = new byte[8192];
+        for (int remaining = payloadSize; remaining > 0; remaining -= buffer.length) {
+            random.nextBytes(buffer);
+            data.write(buffer, 0, Math.min(remaining, buffer.length));
+        }
+        data.flush();
+    }
+
+    /**
+     * Encodes a header of string tags.
+     */
+    private static byte[] header(Map<Integer, String> tags) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteArrayOutputStream store = new ByteArrayOutputStream();
+        DataOutputStream indexData = new DataOutputStream(index);
+        for (Map.Entry<Integer, String> tag : tags.entrySet()) {
+            indexData.writeInt(tag.getKey());
+            indexData.writeInt(TYPE_STRING);
+            indexData.writeInt(store.size());
+            indexData.writeInt(1);
+            store.write(tag.getValue().getBytes(StandardCharsets.UTF_8));
+            store.write(0);
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.write(new byte[] { (byte) 0x8e, (byte) 0xad, (byte) 0xe8, 0x01, 0, 0, 0, 0 });
+        headerData.writeInt(tags.size());
+        headerData.writeInt(store.size());
+        index.writeTo(headerData);
+        store.writeTo(headerData);
+        return header.toByteArray();
+    }
+}
@@ -0,0 +1,75 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.internal.impl.checksum.DefaultChecksumAlgorithmFactorySelector;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
+import org.eclipse.aether.transfer.NoRepositoryLayoutException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves the upload locations of an RPM and its checksums using the Indy generic repository layout, with and
+ * without checksums provided by the package goal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean providedChecksums;
+
+    private RepositoryLayout layout;
+
+    private Artifact artifact;
+
+    private URI location;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, NoRepositoryLayoutException {
+        Path rpm = Path.of("target/rpms/foobar-test-1.0.0-1.noarch.rpm").toAbsolutePath();
+        artifact = new DefaultArtifact("org.jboss.pnc", "foobar-test", null, "rpm", "1.0.0", null, rpm.toFile());
+        if (providedChecksums) {
+            artifact = IndyGenericRepositoryLayoutFactory.withProvidedChecksums(artifact);
+        }
+        layout = new IndyGenericRepositoryLayoutFactory(new DefaultChecksumAlgorithmFactorySelector()).newInstance(
+                new DefaultRepositorySystemSession(),
+                new RemoteRepository.Builder(
+                        "indy",
+                        IndyGenericRepositoryLayoutFactory.CONTENT_TYPE,
+                        "https://indy.example.com/api/content/generic-http/hosted/rpms").build());
+        location = layout.getLocation(artifact, true);
+    }
+
+    @Benchmark
+    public URI getLocation() {
+        return layout.getLocation(artifact, true);
+    }
+
+    @Benchmark
+    public List<RepositoryLayout.ChecksumLocation> getChecksumLocations() {
+        return layout.getChecksumLocations(artifact, true, location);
+    }
+}
@@ -0,0 +1,98 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds a changelog entry to a large generated spec file, streaming it through the spec pipeline, compared against
+ * reading and writing every line in memory as was previously done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpecChangelogBenchmark {
+
+    /**
+     * The number of %files and %changelog lines in the generated spec.
+     */
+    @Param({ "100000" })
+    public int lines;
+
+    private Path directory;
+
+    private Path source;
+
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory("spec-benchmark");
+        source = directory.resolve("source.spec");
+        target = directory.resolve("target.spec");
+        try (BufferedWriter writer = Files.newBufferedWriter(source, StandardCharsets.UTF_8)) {
+            writer.write("Name: benchmark\nVersion: 1.0\nRelease: 1\nSummary: Benchmark\nLicense: ASL 2.0\n\n");
+            writer.write("%description\nBenchmark\n\n%files\n");
+            for (int i = 0; i < lines; i++) {
+                writer.write("/opt/benchmark/lib/file" + i + ".jar\n");
+            }
+            writer.write("\n%changelog\n");
+            for (int i = 0; i < lines; i++) {
+                writer.write("* Mon Jan 01 2024 benchmark@example.com - 1.0-" + i + "\n- Release " + i + "\n\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public Path pipeline() throws IOException {
+        new SpecPipeline(StandardCharsets.UTF_8)
+                .add(SpecTransformer.changelog("* Tue Jan 02 2024 benchmark@example.com - 1.0-1", "- New Release"))
+                .run(source, target);
+        return target;
+    }
+
+    @Benchmark
+    public Path inMemory() throws IOException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        List<String> specLines = Files.readAllLines(target, StandardCharsets.UTF_8);
+        List<String> newSpecLines = new ArrayList<>();
+        specLines.forEach(line -> {
+            newSpecLines.add(line);
+            if (line.startsWith("%changelog")) {
+                newSpecLines.add("* Tue Jan 02 2024 benchmark@example.com - 1.0-1");
+                newSpecLines.add("- New Release");
+                newSpecLines.add("");
+            }
+        });
+        Files.write(target, newSpecLines, StandardCharsets.UTF_8);
+        return target;
+    }
+}
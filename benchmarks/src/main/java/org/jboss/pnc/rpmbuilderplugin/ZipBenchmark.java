@@ -0,0 +1,89 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Assembles the RPMs into a zip, computing their checksums, as the package goal does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZipBenchmark {
+
+    @Param({ "16" })
+    public int rpmCount;
+
+    @Param({ "4194304" })
+    public int rpmSize;
+
+    @Param({ "auto", "deflate", "store" })
+    public String compression;
+
+    @Param({ "6", "9" })
+    public int level;
+
+    @Param({ "0" })
+    public int threads;
+
+    private Path directory;
+
+    private List<File> rpms;
+
+    private Path zip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createDirectory("zip-benchmark");
+        rpms = FixtureRPMs.create(directory.resolve("noarch"), rpmCount, rpmSize, 1).stream()
+                .map(Path::toFile)
+                .toList();
+        zip = directory.resolve("rpms.zip");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteZip() throws IOException {
+        Files.deleteIfExists(zip);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public long archive() throws Exception {
+        new RPMZipArchiver(new QuietLog(), RPMZipArchiver.Compression.fromString(compression), level, threads)
+                .archive(
+                        directory,
+                        rpms,
+                        zip,
+                        "benchmark",
+                        RPMManifest.DEFAULT_ALGORITHMS,
+                        false,
+                        (file, checksums) -> {
+                        });
+        return Files.size(zip);
+    }
+}
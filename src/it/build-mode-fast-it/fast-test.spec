@@ -0,0 +1,24 @@
+Name:           fast-test
+Version:        1.0
+Release:        1
+Summary:        Fast build mode test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Installs a single file; %check fails, so the build only succeeds if it is skipped.
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+echo %{version} > %{buildroot}%{_datadir}/%{name}/version
+
+%check
+exit 1
+
+%files
+%{_datadir}/%{name}/version
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
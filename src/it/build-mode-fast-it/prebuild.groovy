@@ -0,0 +1 @@
+new File(localRepositoryPath, "/../build-mode-fast-deploy").deleteDir()
@@ -0,0 +1,14 @@
+import groovy.json.JsonSlurper
+
+def buildLog = new File(basedir, "build.log")
+
+// A fast build skips %check and builds no source rpm.
+assert new File(basedir, "target/noarch/fast-test-1.0-1.noarch.rpm").exists()
+assert !new File(basedir, "target/fast-test-1.0-1.src.rpm").exists()
+assert buildLog.text.contains("--nocheck")
+assert new JsonSlurper().parse(new File(basedir, "target/rpm-manifest.json")).mode == "fast"
+
+// Its rpms are neither attached nor deployed.
+assert buildLog.text.contains("Not attaching build-mode-fast-it-1.0.0.redhat-00001.zip as its rpms were built in fast mode")
+assert buildLog.text.contains("Refusing to deploy rpms built in fast mode")
+assert !new File(localRepositoryPath, "/../build-mode-fast-deploy").exists()
@@ -0,0 +1,24 @@
+Name:           concurrent-first
+Version:        1.0
+Release:        1
+Summary:        Concurrent builds test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Takes a few seconds to build, so that the other spec file of the module waits for it.
+
+%build
+sleep 3
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+echo %{version} > %{buildroot}%{_datadir}/%{name}/version
+
+%files
+%{_datadir}/%{name}/version
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
@@ -0,0 +1,16 @@
+import groovy.json.JsonSlurper
+
+def buildLog = new File(basedir, "build.log")
+
+// Both spec files are built on their own threads, but only one rpmbuild process may run at once.
+assert buildLog.text.contains("Building 2 spec files using 2 threads")
+assert buildLog.text.contains("for up to 1 concurrent rpmbuild processes")
+assert buildLog.text =~ /Waiting to build concurrent-(first|second)\.spec as 1 rpmbuild processes are already running/
+for (name in ["first", "second"]) {
+    assert new File(basedir, "target/noarch/concurrent-${name}-1.0-1.noarch.rpm").exists()
+    assert new File(basedir, "target/rpm-builder-logs/rpmbuild-concurrent-${name}.spec.log").exists()
+}
+
+// The time spent waiting is recorded as the queue phase.
+def metrics = new File(basedir, "target/org.jboss.pnc.it-concurrent-builds-it-package-metrics.json")
+assert metrics.text.contains("queue")
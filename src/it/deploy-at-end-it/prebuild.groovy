@@ -0,0 +1 @@
+new File(localRepositoryPath, "/../deploy-at-end-deploy").deleteDir()
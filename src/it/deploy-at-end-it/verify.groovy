@@ -0,0 +1,13 @@
+def buildLog = new File(basedir, "build.log")
+def deploydir = new File(localRepositoryPath, "/../deploy-at-end-deploy/org/jboss/pnc/it")
+
+// The first module defers its deploy, and the last module to run the goal deploys the rpms of both.
+def deferred = buildLog.text.indexOf("Deferring the deploy until [org.jboss.pnc.it:deploy-at-end-b:spec:1.0.0.redhat-00001] have run the deploy goal")
+def published = buildLog.text.indexOf("Deploying the rpms of [deploy-at-end-a, deploy-at-end-b]")
+assert deferred >= 0
+assert published > deferred
+
+for (module in ["a", "b"]) {
+    assert new File(deploydir, "deploy-at-end-${module}/1.0.0.redhat-00001/deploy-at-end-${module}-1.0-1.noarch.rpm").exists()
+    assert new File(deploydir, "deploy-at-end-${module}/1.0.0.redhat-00001/deploy-at-end-${module}-1.0-1.src.rpm").exists()
+}
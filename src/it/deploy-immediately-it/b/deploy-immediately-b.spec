@@ -0,0 +1,21 @@
+Name:           deploy-immediately-b
+Version:        1.0
+Release:        1
+Summary:        Deploy immediately test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Installs a single file, to be deployed as soon as it is built.
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+echo %{version} > %{buildroot}%{_datadir}/%{name}/version
+
+%files
+%{_datadir}/%{name}/version
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
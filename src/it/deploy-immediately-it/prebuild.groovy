@@ -0,0 +1 @@
+new File(localRepositoryPath, "/../deploy-immediately-deploy").deleteDir()
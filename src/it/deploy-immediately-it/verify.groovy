@@ -0,0 +1,16 @@
+def buildLog = new File(basedir, "build.log")
+def deploydir = new File(localRepositoryPath, "/../deploy-immediately-deploy/org/jboss/pnc/it")
+
+// Without deployAtEnd each module deploys its rpms as soon as it is built, and none is deferred.
+assert !buildLog.text.contains("Deferring the deploy")
+assert !buildLog.text.contains("Deploying the rpms of")
+assert !buildLog.text.contains("not among the modules expected to run it")
+def matcher = buildLog.text =~ /Deploying \[[^\n]*deploy-immediately-a-1\.0-1\.noarch\.rpm/
+assert matcher.find()
+def deployedA = matcher.start()
+def builtB = buildLog.text.indexOf("Building deploy-immediately-b ")
+assert builtB > deployedA
+
+for (module in ["a", "b"]) {
+    assert new File(deploydir, "deploy-immediately-${module}/1.0.0.redhat-00001/deploy-immediately-${module}-1.0-1.noarch.rpm").exists()
+}
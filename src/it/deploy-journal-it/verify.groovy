@@ -0,0 +1,16 @@
+def server = System.properties.remove("rpm-builder.it.server")
+def uploads = System.properties.remove("rpm-builder.it.uploads")
+server.stop(0)
+
+def buildLog = new File(basedir, "build.log")
+
+// The first deploy fails to upload the second rpm, and the second deploy resumes with only that rpm.
+assert buildLog.text.contains("Unable to deploy 1 of 2 rpms")
+assert buildLog.text.contains("Build inputs are unchanged since the previous build; skipping rpmbuild")
+assert buildLog.text.contains("Resuming deploy: 1 of 2 artifacts were uploaded by a previous attempt")
+// Three uploads of an rpm were attempted: both by the first deploy, of which one failed, and the other by the second.
+assert uploads.findAll { it.endsWith(".rpm") }.size() == 3
+assert new File(basedir, "target/stand-in/repository/org/jboss/pnc/it/deploy-journal-it-rpm/1.0.0.redhat-00001/journal-test-1.0-1.noarch.rpm").exists()
+assert new File(basedir, "target/stand-in/repository/org/jboss/pnc/it/deploy-journal-it-rpm/1.0.0.redhat-00001/journal-test-1.0-1.src.rpm").exists()
+// The journal is removed once every artifact has been deployed.
+assert !new File(basedir, "rpm/target/rpm-deploy-journal.txt").exists()
@@ -0,0 +1,2 @@
+def deploydir = new File(localRepositoryPath, "/../repodata-deploy")
+deploydir.deleteDir()
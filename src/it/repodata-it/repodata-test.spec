@@ -0,0 +1,21 @@
+Name:           repodata-test
+Version:        1.0
+Release:        1
+Summary:        Repodata test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Installs a single file, so that its repository metadata may be checked.
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+echo %{version} > %{buildroot}%{_datadir}/%{name}/version
+
+%files
+%{_datadir}/%{name}/version
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
@@ -0,0 +1,30 @@
+import java.util.zip.GZIPInputStream
+import groovy.xml.XmlSlurper
+
+def buildLog = new File(basedir, "build.log")
+
+def primary(File repodata) {
+    def repomd = new File(repodata, "repomd.xml")
+    assert repomd.exists()
+    def location = new XmlSlurper().parse(repomd).data.find { it.@type.text() == "primary" }.location.@href.text()
+    assert location.startsWith("repodata/")
+    def file = new File(repodata.parentFile, location)
+    assert file.exists()
+    return new GZIPInputStream(new FileInputStream(file)).getText("UTF-8")
+}
+
+assert buildLog.text.contains("Generated repodata for 2 rpms in")
+
+// The metadata for the build directory locates the rpms where they were built.
+def local = primary(new File(basedir, "target/repodata"))
+assert local.contains("<name>repodata-test</name>")
+assert local.contains("href=\"noarch/repodata-test-1.0-1.noarch.rpm\"")
+
+// The metadata deployed locates the rpms alongside each other, as they are deployed.
+assert new File(basedir, "target/deploy-repodata/rpms.txt").exists()
+def pom = new XmlSlurper().parse(new File(basedir, "pom.xml"))
+def deploydir = new File(localRepositoryPath.toString() + "/../repodata-deploy", "${pom.groupId.text().replace('.', '/')}/${pom.artifactId.text()}/${pom.version.text()}")
+assert new File(deploydir, "repodata-test-1.0-1.noarch.rpm").exists()
+def deployed = primary(new File(deploydir, "repodata"))
+assert deployed.contains("href=\"repodata-test-1.0-1.noarch.rpm\"")
+assert buildLog.text.contains("Deploying repodata to file://")
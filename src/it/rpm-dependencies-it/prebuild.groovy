@@ -0,0 +1,9 @@
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+
+// Install the dependency rpm into the local repository, from which it is resolved.
+def repodir = new File(localRepositoryPath, "org/jboss/pnc/it/foobar-test/1.0.0")
+repodir.mkdirs()
+
+Files.copy(Path.of(basedir.toString(), "foobar-test-1.0.0-1.fc42.noarch.rpm"), Path.of(repodir.toString(), "foobar-test-1.0.0.rpm"), StandardCopyOption.REPLACE_EXISTING)
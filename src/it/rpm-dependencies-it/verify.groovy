@@ -0,0 +1,7 @@
+def buildLog = new File(basedir, "build.log")
+
+assert new File(basedir, "target/noarch/dependencies-test-1.0-1.noarch.rpm").exists()
+// The rpm is extracted directly from the local repository rather than being copied into the build directory first.
+assert buildLog.text =~ /Extracted \d+ entries from rpm .*org.jboss.pnc.it.foobar-test.1\.0\.0.foobar-test-1\.0\.0\.rpm/
+assert !new File(basedir, "target/dependency").exists()
+assert new File(basedir, "target/sysroot/tmp/foobar").exists()
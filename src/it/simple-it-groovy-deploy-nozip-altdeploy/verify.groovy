@@ -31,5 +31,6 @@ entries.stream().filter(s -> s.endsWith("rpm")).forEach {
 assert rpms.size() == 2
 assert rpms.contains("apache-sshd-1.0-2.src.rpm")
 
-assert buildLog.text.contains("rpm-builder-maven-plugin/target/its/simple-it-groovy-deploy-nozip-altdeploy/target/dependency/noarch/foobar-test-1.0.0-1.fc42.noarch.rpm using rpm2cpio/cpio")
+def dependencyRpm = new File(basedir, "target/dependency/noarch/foobar-test-1.0.0-1.fc42.noarch.rpm")
+assert buildLog.text.contains("entries from rpm " + dependencyRpm.path)
 assert new File("/tmp/foobar").exists()
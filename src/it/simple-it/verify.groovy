@@ -15,3 +15,10 @@ new ZipFile(zipFile).entries().each {
 assert entries.size() == 2
 assert entries.stream().sorted().toArray().toString().contains("apache-sshd-1.0-1.el9.src.rpm, noarch/apache-sshd-1.0-1.el9.noarch.rpm]")
 assert ! buildLog.text.contains("Using groovy script")
+
+def manifestFile = new File(basedir, "target/rpm-manifest.json")
+assert manifestFile.exists()
+def manifest = new groovy.json.JsonSlurper().parse(manifestFile)
+assert manifest.rpms.collect { it.path }.sort() == ["apache-sshd-1.0-1.el9.src.rpm", "noarch/apache-sshd-1.0-1.el9.noarch.rpm"]
+assert manifest.rpms.find { it.path.startsWith("noarch/") }.arch == "noarch"
+assert manifest.rpms.every { it.checksums["SHA-1"] && it.checksums["MD5"] && it.checksums["SHA-256"] }
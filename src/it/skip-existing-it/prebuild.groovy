@@ -0,0 +1,34 @@
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpHandler
+import com.sun.net.httpserver.HttpServer
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+// A stand-in for a remote repository, storing what is uploaded and serving it back.
+def repository = new File(basedir, "target/stand-in")
+repository.deleteDir()
+def uploads = Collections.synchronizedList(new ArrayList<String>())
+
+def server = HttpServer.create(new InetSocketAddress("localhost", 28461), 0)
+server.createContext("/", { HttpExchange exchange ->
+    def file = new File(repository, exchange.requestURI.path)
+    if (exchange.requestMethod == "PUT") {
+        uploads.add(exchange.requestURI.path)
+        file.parentFile.mkdirs()
+        exchange.requestBody.withStream { Files.copy(it, file.toPath(), StandardCopyOption.REPLACE_EXISTING) }
+        exchange.sendResponseHeaders(201, -1)
+    } else if (!file.isFile()) {
+        exchange.sendResponseHeaders(404, -1)
+    } else if (exchange.requestMethod == "HEAD" || file.length() == 0) {
+        exchange.sendResponseHeaders(200, -1)
+    } else {
+        exchange.sendResponseHeaders(200, file.length())
+        exchange.responseBody.withStream { it << file.bytes }
+    }
+    exchange.close()
+} as HttpHandler)
+server.start()
+
+System.properties.put("rpm-builder.it.server", server)
+System.properties.put("rpm-builder.it.uploads", uploads)
+new File(localRepositoryPath, "/../skip-existing-deploy").deleteDir()
@@ -0,0 +1,21 @@
+Name:           skip-test
+Version:        1.0
+Release:        1
+Summary:        Skip existing test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Installs a single file, so that it may be deployed twice.
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+echo %{version} > %{buildroot}%{_datadir}/%{name}/version
+
+%files
+%{_datadir}/%{name}/version
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
@@ -0,0 +1,12 @@
+def server = System.properties.remove("rpm-builder.it.server")
+def uploads = System.properties.remove("rpm-builder.it.uploads")
+server.stop(0)
+
+def buildLog = new File(basedir, "build.log")
+
+// The first deploy uploads both rpms, and the second finds them already deployed with identical checksums.
+assert buildLog.text.contains("Uploading 2 of 2 artifacts; skipped 0 already deployed with identical checksums (0 bytes saved)")
+assert buildLog.text.contains("Build inputs are unchanged since the previous build; skipping rpmbuild")
+assert buildLog.text =~ /Uploading 0 of 2 artifacts; skipped 2 already deployed with identical checksums \([1-9]\d* bytes saved\)/
+assert uploads.findAll { it.endsWith(".rpm") }.size() == 2
+assert new File(basedir, "target/stand-in/repository/org/jboss/pnc/it/skip-existing-it-rpm/1.0.0.redhat-00001/skip-test-1.0-1.noarch.rpm").exists()
@@ -0,0 +1,5 @@
+import java.nio.file.Files
+
+def link = new File(basedir, "notes-link.txt").toPath()
+Files.deleteIfExists(link)
+Files.createSymbolicLink(link, link.resolveSibling("notes.txt").fileName)
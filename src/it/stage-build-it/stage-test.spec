@@ -0,0 +1,29 @@
+Name:           stage-test
+Version:        1.0
+Release:        1
+Summary:        Staged build test
+License:        ASL 2.0
+Source0:        sshd-1.0-project-sources.zip
+Source1:        notes.txt
+Source2:        notes-link.txt
+
+BuildArch:      noarch
+
+%description
+Built from staged sources: an archive, a file and a symbolic link to that file.
+
+%prep
+%setup -q -n apache-sshd-1.0
+# The staged copy may be modified without affecting the file in the project.
+echo modified >> %{SOURCE1}
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+cp README.md %{SOURCE1} %{SOURCE2} %{buildroot}%{_datadir}/%{name}/
+
+%files
+%{_datadir}/%{name}
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
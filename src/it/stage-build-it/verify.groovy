@@ -0,0 +1,11 @@
+def buildLog = new File(basedir, "build.log")
+def rpm = new File(basedir, "target/noarch/stage-test-1.0-1.noarch.rpm")
+
+assert rpm.exists()
+assert new File(basedir, "target/stage-test-1.0-1.src.rpm").exists()
+assert buildLog.text =~ /Staged \d+ source files \(\d+ linked, \d+ copied\) into .*rpm-staging/
+assert buildLog.text.contains("Moved 2 rpms from")
+// Files which %prep may modify are copied rather than linked, so the project is unchanged.
+assert new File(basedir, "notes.txt").text == "Notes staged alongside the sources.\n"
+// The private top directory is removed once the rpms have been moved out of it.
+assert new File(basedir, "target/rpm-staging").list().length == 0
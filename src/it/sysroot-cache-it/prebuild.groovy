@@ -0,0 +1,9 @@
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+
+new File(basedir, "target").deleteDir()
+def noarchdir = new File(basedir, "target/dependency/noarch")
+noarchdir.mkdirs()
+
+Files.copy(Path.of(basedir.toString(), "foobar-test-1.0.0-1.fc42.noarch.rpm"), Path.of(noarchdir.toString(), "foobar-test-1.0.0-1.fc42.noarch.rpm"), StandardCopyOption.REPLACE_EXISTING)
@@ -0,0 +1,21 @@
+Name:           sysroot-test
+Version:        1.0
+Release:        1
+Summary:        Sysroot test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Copies a file installed into the sysroot by a dependency rpm.
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+cp %{sysroot}/tmp/foobar %{buildroot}%{_datadir}/%{name}/
+
+%files
+%{_datadir}/%{name}/foobar
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
@@ -0,0 +1,15 @@
+def buildLog = new File(basedir, "build.log")
+def sysroot = new File(basedir, "target/sysroot")
+def dependencyRpm = new File(basedir, "target/dependency/noarch/foobar-test-1.0.0-1.fc42.noarch.rpm")
+
+assert new File(basedir, "target/noarch/sysroot-test-1.0-1.noarch.rpm").exists()
+
+// The first build extracts the rpm into the cache, and the second installs it from there.
+assert buildLog.text.contains("Installed rpm " + dependencyRpm.path + " via the extraction cache")
+assert buildLog.text.contains("Installed rpm " + dependencyRpm.path + " from the extraction cache")
+assert buildLog.text.contains("Installed 1 rpms into " + sysroot.path + ", 1 of which were already in the extraction cache")
+assert new File(basedir, "target/extraction-cache").list().length > 0
+
+// The sysroot is recreated by each build, being marked as created by the plugin.
+assert new File(sysroot, "tmp/foobar").exists()
+assert new File(sysroot, ".rpm-builder-sysroot").exists()
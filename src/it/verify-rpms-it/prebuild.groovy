@@ -0,0 +1,8 @@
+new File(localRepositoryPath, "/../verify-rpms-deploy").deleteDir()
+
+// A copy of a valid rpm with the last byte of its payload changed.
+def bytes = new File(basedir, "foobar-test-1.0.0-1.fc42.noarch.rpm").bytes
+bytes[bytes.length - 1] ^= 0xff
+def corrupt = new File(basedir, "target/noarch/foobar-test-1.0.0-1.fc42.noarch.rpm")
+corrupt.parentFile.mkdirs()
+corrupt.bytes = bytes
@@ -0,0 +1,21 @@
+Name:           verify-test
+Version:        1.0
+Release:        1
+Summary:        Verification test
+License:        ASL 2.0
+
+BuildArch:      noarch
+
+%description
+Installs a single file, so that the rpms built may be verified.
+
+%install
+mkdir -p %{buildroot}%{_datadir}/%{name}
+echo %{version} > %{buildroot}%{_datadir}/%{name}/version
+
+%files
+%{_datadir}/%{name}/version
+
+%changelog
+* Wed Apr 09 2025 N Cross <ncross@redhat.com> - 1.0-1
+- Test build
@@ -0,0 +1,14 @@
+import groovy.json.JsonSlurper
+
+def buildLog = new File(basedir, "build.log")
+
+// The corrupt rpm fails the first build as the zip is assembled.
+assert buildLog.text =~ /foobar-test-1\.0\.0-1\.fc42\.noarch\.rpm is corrupt: /
+
+// The second and third builds verify the rpms as the zip is assembled and then in parallel without a zip.
+assert buildLog.text.count("Verified 2 rpms") == 2
+assert new JsonSlurper().parse(new File(basedir, "target/rpm-manifest.json")).verified == true
+
+// The deploy goal does not read again the rpms verified by the package goal.
+assert buildLog.text.contains("Verified 0 rpms; 2 were verified by the package goal")
+assert new File(localRepositoryPath, "/../verify-rpms-deploy/org/jboss/pnc/it/verify-rpms-it/1.0.0.redhat-00001/verify-test-1.0-1.noarch.rpm").exists()
@@ -0,0 +1,8 @@
+def buildLog = new File(basedir, "build.log")
+def rpm = new File(basedir, "rpm/target/noarch/watch-test-1.0-1.noarch.rpm")
+
+assert rpm.exists()
+// The directories rpmbuild creates within the project must not be seen as changes to be rebuilt.
+assert buildLog.text.count("Built in ") == 1
+assert !buildLog.text.contains("Rebuilding as")
+assert buildLog.text.contains("Stopped watching after 30 s")
@@ -8,10 +8,16 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 import javax.inject.Inject;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
@@ -21,24 +27,114 @@ public abstract class BaseMojo extends AbstractMojo {
     @Inject
     protected MavenProject project;
 
+    @Inject
+    protected MavenSession session;
+
     @Parameter(defaultValue = "${project.build.directory}", property = "outputDir", required = true, readonly = true)
     protected File outputDirectory;
 
+    /**
+     * Directory the per-phase timing report of each goal is written to. Pointing every module at a shared directory,
+     * e.g. <code>${maven.multiModuleProjectDirectory}/target/rpm-metrics</code>, collects the reports for a reactor.
+     */
+    @Parameter(defaultValue = "${project.build.directory}", property = "metricsDirectory")
+    protected File metricsDirectory;
+
+    /**
+     * The sysroot the RPMs are extracted into when <code>installSysroot</code> is set. As it is recreated for each
+     * build, an existing directory is only deleted if it is empty or was created as a sysroot by a previous build. It
+     * is never searched for built RPMs.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/sysroot", property = "sysrootDirectory")
+    protected File sysrootDirectory;
+
+    /**
+     * Directories below the build directory that never contain built RPMs: the rpmbuild build directory (holding the
+     * unpacked buildroot), the patched spec, any RPMs downloaded via
+     * <a href="https://maven.apache.org/plugins/maven-dependency-plugin/unpack-mojo.html">unpack</a> into its default
+     * directory and the fallback for staged builds, which an interrupted build may leave behind.
+     */
+    private static final List<String> EXCLUDED_DIRECTORIES = List
+            .of("build", "spec", "dependency", BuildStaging.FALLBACK_DIRECTORY);
+
+    /**
+     * Returns the RPMs built by the package goal, as recorded in its manifest. If there is no manifest, or it refers to
+     * RPMs that no longer exist, the build directory is searched instead.
+     */
+    protected List<File> findBuiltRPMs() throws IOException {
+        Path output = outputDirectory.toPath();
+        Optional<RPMManifest> manifest = RPMManifest.read(output.resolve(RPMManifest.FILENAME));
+        if (manifest.isPresent()) {
+            List<File> rpms = manifest.get().getFiles(output);
+            if (rpms.stream().allMatch(File::isFile)) {
+                return rpms;
+            }
+            getLog().warn("Ignoring " + RPMManifest.FILENAME + " as it refers to rpms which no longer exist");
+        }
+        return findRPMs(output);
+    }
+
+    /**
+     * Writes the metrics report; failure to do so is logged rather than failing the build.
+     */
+    protected void writeMetrics(BuildMetrics metrics, boolean success) {
+        try {
+            Path report = metrics.write(
+                    metricsDirectory.toPath(),
+                    project.getGroupId(),
+                    project.getArtifactId(),
+                    success);
+            getLog().debug("Wrote metrics to " + report);
+        } catch (IOException e) {
+            getLog().warn("Unable to write metrics report: " + e);
+        }
+    }
+
+    /**
+     * Returns the checksums recorded in the manifest by the package goal, keyed by absolute path, for those rpms that
+     * still exist with the recorded size and last modified time.
+     */
+    protected Map<Path, Map<String, String>> readProvidedChecksums() throws IOException {
+        Path output = outputDirectory.toPath();
+        Map<Path, Map<String, String>> result = new HashMap<>();
+        Optional<RPMManifest> manifest = RPMManifest.read(output.resolve(RPMManifest.FILENAME));
+        if (manifest.isPresent()) {
+            for (RPMManifest.Entry rpm : manifest.get().getRPMs()) {
+                Path path = output.resolve(rpm.path()).toAbsolutePath();
+                if (rpm.isUnchanged(path)) {
+                    result.put(path, rpm.checksums());
+                }
+            }
+        }
+        return result;
+    }
+
     protected List<File> findRPMs(Path searchDirectory) throws IOException {
         final List<File> rpms = new ArrayList<>();
-        final File dependencyDirectory = new File(outputDirectory, "dependency");
+        final Path output = outputDirectory.toPath().toAbsolutePath().normalize();
+        // Excluded by absolute path, as the sysroot may hold the rpms of dependencies wherever it is configured.
+        final Set<Path> excluded = new HashSet<>();
+        EXCLUDED_DIRECTORIES.forEach(name -> excluded.add(output.resolve(name)));
+        excluded.add(sysrootDirectory.toPath().toAbsolutePath().normalize());
         Files.walkFileTree(searchDirectory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if (excluded.contains(dir.toAbsolutePath().normalize())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
             @Override
             public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
-                // If RPMs have been downloaded via https://maven.apache.org/plugins/maven-dependency-plugin/unpack-mojo.html the
-                // default directory is target/dependency so we should ignore that.
-                if (!file.toString().startsWith(dependencyDirectory.toString())
-                        && file.getFileName().toString().toLowerCase().endsWith(".rpm")) {
+                if (file.getFileName().toString().toLowerCase().endsWith(".rpm")) {
                     rpms.add(file.toFile());
                 }
                 return FileVisitResult.CONTINUE;
             }
         });
+        // Sort for a stable order between the manifest, the zip and deployment.
+        rpms.sort(null);
         return rpms;
     }
 }
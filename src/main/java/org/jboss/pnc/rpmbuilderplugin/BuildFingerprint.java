@@ -0,0 +1,161 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * Accumulates a SHA-256 digest over every input of an RPM build so that an unchanged build may be detected and
+ * skipped. Values are added as {@code key=value} records and files by their relative path, size and content so that
+ * renames and moves change the fingerprint as well as edits.
+ */
+final class BuildFingerprint {
+
+    static final String FILENAME = "rpm-builder.fingerprint";
+
+    private final MessageDigest digest;
+
+    BuildFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    BuildFingerprint put(String key, Object value) {
+        digest.update((key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    /**
+     * Adds a map of values in key order so that the fingerprint is independent of the map implementation.
+     */
+    BuildFingerprint put(String key, Map<String, String> values) {
+        new TreeMap<>(values).forEach((k, v) -> put(key + "." + k, v));
+        return this;
+    }
+
+    BuildFingerprint putFile(Path baseDirectory, Path file) throws IOException {
+        put("file", baseDirectory.relativize(file) + ":" + Files.size(file));
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(NullOutputStream.INSTANCE);
+        }
+        return this;
+    }
+
+    /**
+     * Adds every regular file below the directory in a stable order. Excluded directories are not descended into.
+     */
+    BuildFingerprint putTree(Path directory, Predicate<Path> exclude) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(directory) && exclude.test(dir) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !exclude.test(file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        files.sort(null);
+        for (Path file : files) {
+            putFile(directory, file);
+        }
+        return this;
+    }
+
+    String compute() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * The outputs of a previous build together with the fingerprint of the inputs that produced them.
+     *
+     * @param fingerprint the input fingerprint
+     * @param specs the patched spec files, the first being the primary artifact
+     * @param zip the zip of RPMs, if one was created
+     * @param rpms the built RPMs
+     */
+    record Outputs(String fingerprint, List<Path> specs, Path zip, List<Path> rpms) {
+
+        static Optional<Outputs> load(Path file) throws IOException {
+            if (!Files.isRegularFile(file)) {
+                return Optional.empty();
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            String fingerprint = properties.getProperty("fingerprint");
+            List<Path> specs = readPaths(properties, "spec.");
+            if (fingerprint == null || specs.isEmpty()) {
+                return Optional.empty();
+            }
+            String zip = properties.getProperty("zip");
+            return Optional.of(
+                    new Outputs(fingerprint, specs, zip == null ? null : Path.of(zip), readPaths(properties, "rpm.")));
+        }
+
+        private static List<Path> readPaths(Properties properties, String prefix) {
+            List<Path> paths = new ArrayList<>();
+            String path;
+            while ((path = properties.getProperty(prefix + paths.size())) != null) {
+                paths.add(Path.of(path));
+            }
+            return paths;
+        }
+
+        void store(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("fingerprint", fingerprint);
+            for (int i = 0; i < specs.size(); i++) {
+                properties.setProperty("spec." + i, specs.get(i).toString());
+            }
+            if (zip != null) {
+                properties.setProperty("zip", zip.toString());
+            }
+            for (int i = 0; i < rpms.size(); i++) {
+                properties.setProperty("rpm." + i, rpms.get(i).toString());
+            }
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                properties.store(writer, "rpm-builder-maven-plugin incremental build state");
+            }
+        }
+
+        /**
+         * Whether every recorded output still exists.
+         */
+        boolean exists() {
+            return specs.stream().allMatch(Files::isRegularFile)
+                    && (zip == null || Files.isRegularFile(zip))
+                    && rpms.stream().allMatch(Files::isRegularFile);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import groovy.json.JsonOutput;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records the wall time, bytes processed and file count of each phase of a goal. Each phase is emitted as a JFR event
+ * (recorded only while a flight recording is running) and, once the goal completes, every phase is written to a JSON
+ * report named <code>&lt;groupId&gt;-&lt;artifactId&gt;-&lt;goal&gt;-metrics.json</code>. The reports share a schema
+ * and are named by the group and artifact id of the module, which together are unique within a reactor, so that the
+ * reports of every module may be written to one directory and aggregated.
+ */
+final class BuildMetrics {
+
+    @Name("org.jboss.pnc.rpmbuilder.Phase")
+    @Label("RPM Builder Phase")
+    @Description("A phase of an rpm-builder goal")
+    @Category({ "Maven", "RPM Builder" })
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Project")
+        String project;
+
+        @Label("Goal")
+        String goal;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Subject")
+        @Description("What the phase applies to, such as the spec file, if it is run more than once")
+        String subject;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Files")
+        long files;
+    }
+
+    /**
+     * A phase in progress, closed once complete. Bytes and files may be added concurrently.
+     */
+    final class Phase implements AutoCloseable {
+
+        private final String name;
+
+        private final String subject;
+
+        private final PhaseEvent event = new PhaseEvent();
+
+        private final long start = System.nanoTime();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final AtomicLong files = new AtomicLong();
+
+        private Phase(String name, String subject) {
+            this.name = name;
+            this.subject = subject;
+            event.begin();
+        }
+
+        /**
+         * Adds to the number of bytes processed by this phase.
+         */
+        Phase addBytes(long count) {
+            bytes.addAndGet(count);
+            return this;
+        }
+
+        /**
+         * Adds to the number of files processed by this phase.
+         */
+        Phase addFiles(long count) {
+            files.addAndGet(count);
+            return this;
+        }
+
+        /**
+         * Adds a file, and its size, to this phase.
+         */
+        Phase addFile(Path file) {
+            addFiles(1);
+            try {
+                addBytes(Files.size(file));
+            } catch (IOException e) {
+                // The size is informational only.
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.project = project;
+                event.goal = goal;
+                event.phase = name;
+                event.subject = subject;
+                event.bytes = bytes.get();
+                event.files = files.get();
+                event.commit();
+            }
+            Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("name", name);
+            if (subject != null) {
+                phase.put("subject", subject);
+            }
+            phase.put("millis", (System.nanoTime() - start) / 1_000_000);
+            phase.put("bytes", bytes.get());
+            phase.put("files", files.get());
+            synchronized (phases) {
+                phases.add(phase);
+            }
+        }
+    }
+
+    private final String project;
+
+    private final String goal;
+
+    private final Instant started = Instant.now();
+
+    private final long start = System.nanoTime();
+
+    private final List<Map<String, Object>> phases = new ArrayList<>();
+
+    /**
+     * @param project the project identifier
+     * @param goal the goal being measured
+     */
+    BuildMetrics(String project, String goal) {
+        this.project = project;
+        this.goal = goal;
+    }
+
+    /**
+     * Starts a phase, which is recorded when closed.
+     */
+    Phase start(String name) {
+        return new Phase(name, null);
+    }
+
+    /**
+     * Starts a phase applying to one of several subjects, such as one of several spec files.
+     */
+    Phase start(String name, String subject) {
+        return new Phase(name, subject);
+    }
+
+    /**
+     * Writes the report of every completed phase.
+     *
+     * @param directory the directory to write the report to
+     * @param groupId the group id the report is named after
+     * @param artifactId the artifact id the report is named after
+     * @param success whether the goal completed successfully
+     * @return the report
+     * @throws IOException if the report cannot be written
+     */
+    Path write(Path directory, String groupId, String artifactId, boolean success) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("project", project);
+        json.put("goal", goal);
+        json.put("started", started.toString());
+        json.put("millis", (System.nanoTime() - start) / 1_000_000);
+        json.put("success", success);
+        synchronized (phases) {
+            json.put("phases", new ArrayList<>(phases));
+        }
+        Files.createDirectories(directory);
+        Path report = directory.resolve(groupId + "-" + artifactId + "-" + goal + "-metrics.json");
+        Files.writeString(report, JsonOutput.prettyPrint(JsonOutput.toJson(json)), StandardCharsets.UTF_8);
+        return report;
+    }
+}
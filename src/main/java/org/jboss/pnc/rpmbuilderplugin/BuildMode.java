@@ -0,0 +1,83 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * What rpmbuild builds, recorded in the manifest and the zip so that the output of a <code>fast</code> build can be
+ * recognised and is not deployed by accident.
+ */
+enum BuildMode {
+    /**
+     * Build the binary and source RPMs (<code>-ba</code>).
+     */
+    ALL("-ba", List.of(), Map.of()),
+    /**
+     * Build only the binary RPMs (<code>-bb</code>).
+     */
+    BINARY("-bb", List.of(), Map.of()),
+    /**
+     * Build only the source RPM (<code>-bs</code>).
+     */
+    SOURCE("-bs", List.of(), Map.of()),
+    /**
+     * Build only the binary RPMs, skipping <code>%check</code>, the debuginfo packages, build-id links and the
+     * <code>brp-*</code> post-processing of the buildroot, for functional RPMs that are not to be released.
+     */
+    FAST(
+            "-bb",
+            List.of("--nocheck"),
+            Map.of("debug_package", "%{nil}", "_build_id_links", "none", "__os_install_post", "%{nil}"));
+
+    private final String option;
+
+    private final List<String> arguments;
+
+    private final Map<String, String> macros;
+
+    BuildMode(String option, List<String> arguments, Map<String, String> macros) {
+        this.option = option;
+        this.arguments = arguments;
+        this.macros = macros;
+    }
+
+    static BuildMode fromString(String value) throws MojoExecutionException {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(
+                    "Unknown build mode '" + value + "'; expected one of all, binary, source or fast");
+        }
+    }
+
+    /**
+     * The rpmbuild option selecting what is built.
+     */
+    String getOption() {
+        return option;
+    }
+
+    /**
+     * Any further rpmbuild arguments.
+     */
+    List<String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * The macros overridden by the mode.
+     */
+    Map<String, String> getMacros() {
+        return macros;
+    }
+
+    /**
+     * The name of the mode as configured and recorded.
+     */
+    String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
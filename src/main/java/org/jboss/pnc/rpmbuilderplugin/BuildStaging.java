@@ -0,0 +1,268 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A private rpmbuild top directory for a single execution, so that the sources, build directories, buildroots and
+ * output of concurrent executions cannot collide and may be placed on faster storage such as a tmpfs. Archives among
+ * the sources are hardlinked into it where the filesystem allows; every other source is copied, as <code>%prep</code>
+ * could otherwise modify the original through the link. Symbolic links are followed and anything which is neither a
+ * file nor a directory fails the staging, rather than the build failing later for want of it. If the sources are
+ * larger than the threshold, or there is not room for them, the fallback directory is used instead. The directory is
+ * removed when closed.
+ */
+final class BuildStaging implements AutoCloseable {
+
+    /**
+     * The directory below the build directory in which the top directory is created if the sources do not fit within
+     * the staging directory.
+     */
+    static final String FALLBACK_DIRECTORY = "staging";
+
+    /**
+     * The extensions of archives, which rpmbuild only ever reads, that may safely be hardlinked.
+     */
+    private static final List<String> ARCHIVE_EXTENSIONS = List.of(
+            ".tar",
+            ".tar.gz",
+            ".tgz",
+            ".tar.bz2",
+            ".tbz2",
+            ".tar.xz",
+            ".txz",
+            ".tar.zst",
+            ".zip",
+            ".jar",
+            ".war",
+            ".ear",
+            ".rpm");
+
+    private final Log log;
+
+    private final Path topDirectory;
+
+    private long linked;
+
+    private long copied;
+
+    private long bytes;
+
+    private BuildStaging(Log log, Path topDirectory) {
+        this.log = log;
+        this.topDirectory = topDirectory;
+    }
+
+    /**
+     * Creates a private top directory and stages the sources into it.
+     *
+     * @param log the logger
+     * @param name the prefix of the name of the top directory
+     * @param sourceDirectory the directory containing the sources
+     * @param exclude the files and directories below the source directory which are not staged
+     * @param stagingDirectory the directory to create the top directory in
+     * @param fallbackDirectory the directory to create the top directory in if the sources do not fit
+     * @param threshold the size in bytes of sources above which the fallback directory is used
+     * @return the staged top directory
+     * @throws IOException if the sources cannot be staged
+     */
+    static BuildStaging create(
+            Log log,
+            String name,
+            Path sourceDirectory,
+            Predicate<Path> exclude,
+            Path stagingDirectory,
+            Path fallbackDirectory,
+            long threshold) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        long size = 0;
+        // Symbolic links are followed, so that what they point to is staged; a link loop fails the walk.
+        Files.walkFileTree(
+                sourceDirectory,
+                EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                Integer.MAX_VALUE,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return !dir.equals(sourceDirectory) && exclude.test(dir) ? FileVisitResult.SKIP_SUBTREE
+                                : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (exclude.test(file)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (!attrs.isRegularFile()) {
+                            throw new IOException(
+                                    "Unable to stage " + file + " as it is neither a file nor a directory"
+                                            + (attrs.isSymbolicLink() ? " (a broken symbolic link)" : ""));
+                        }
+                        sources.add(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        for (Path source : sources) {
+            size += Files.size(source);
+        }
+
+        Path parent = stagingDirectory;
+        if (size > threshold) {
+            log.info(
+                    "Sources (" + size + " bytes) exceed the staging threshold (" + threshold + " bytes); staging in "
+                            + fallbackDirectory);
+            parent = fallbackDirectory;
+        } else {
+            Files.createDirectories(stagingDirectory);
+            long usable = Files.getFileStore(stagingDirectory).getUsableSpace();
+            if (usable < size) {
+                log.info(
+                        "Only " + usable + " bytes are available in " + stagingDirectory + " for " + size
+                                + " bytes of sources; staging in " + fallbackDirectory);
+                parent = fallbackDirectory;
+            }
+        }
+        Files.createDirectories(parent);
+        BuildStaging staging = new BuildStaging(log, Files.createTempDirectory(parent, name + "-"));
+        try {
+            staging.stage(sourceDirectory, sources);
+        } catch (IOException e) {
+            staging.close();
+            throw e;
+        }
+        log.info(
+                "Staged " + sources.size() + " source files (" + staging.linked + " linked, " + staging.copied
+                        + " copied) into " + staging.topDirectory);
+        return staging;
+    }
+
+    private void stage(Path sourceDirectory, List<Path> sources) throws IOException {
+        Path target = getSourceDirectory();
+        Files.createDirectories(target);
+        Files.createDirectories(getRPMDirectory());
+        Files.createDirectories(getSRPMDirectory());
+        // Once a link fails, typically because the staging directory is on another filesystem, so will the rest.
+        boolean link = true;
+        for (Path source : sources) {
+            Path staged = target.resolve(sourceDirectory.relativize(source).toString());
+            Files.createDirectories(staged.getParent());
+            if (link && isArchive(source)) {
+                try {
+                    // Linking a symbolic link would link the link itself, so the file it points to is linked.
+                    Files.createLink(staged, source.toRealPath());
+                    linked++;
+                    continue;
+                } catch (IOException | UnsupportedOperationException e) {
+                    log.debug("Unable to link " + source + " into " + topDirectory + ", copying instead: " + e);
+                    link = false;
+                }
+            }
+            Files.copy(source, staged, StandardCopyOption.COPY_ATTRIBUTES);
+            copied++;
+            bytes += Files.size(staged);
+        }
+    }
+
+    private static boolean isArchive(Path source) {
+        String name = source.getFileName().toString().toLowerCase(Locale.ROOT);
+        return ARCHIVE_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    Path getTopDirectory() {
+        return topDirectory;
+    }
+
+    Path getSourceDirectory() {
+        return topDirectory.resolve("SOURCES");
+    }
+
+    /**
+     * Returns the build directory for the named spec file.
+     */
+    Path getBuildDirectory(String name) {
+        return topDirectory.resolve("BUILD").resolve(name);
+    }
+
+    Path getRPMDirectory() {
+        return topDirectory.resolve("RPMS");
+    }
+
+    Path getSRPMDirectory() {
+        return topDirectory.resolve("SRPMS");
+    }
+
+    /**
+     * Returns the number of bytes copied, rather than linked, into the top directory.
+     */
+    long getCopiedBytes() {
+        return bytes;
+    }
+
+    /**
+     * Moves the built RPMs and source RPMs into the output directory, keeping the layout they would have had if built
+     * there directly.
+     *
+     * @param outputDirectory the directory to move the RPMs to
+     * @return the RPMs moved
+     * @throws IOException if an RPM cannot be moved
+     */
+    List<Path> moveRPMs(Path outputDirectory) throws IOException {
+        List<Path> moved = new ArrayList<>();
+        for (Path directory : List.of(getRPMDirectory(), getSRPMDirectory())) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            List<Path> rpms;
+            try (Stream<Path> walk = Files.walk(directory)) {
+                rpms = walk.filter(f -> f.getFileName().toString().endsWith(".rpm"))
+                        .filter(Files::isRegularFile)
+                        .toList();
+            }
+            for (Path rpm : rpms) {
+                Path target = outputDirectory.resolve(directory.relativize(rpm).toString());
+                Files.createDirectories(target.getParent());
+                Files.move(rpm, target, StandardCopyOption.REPLACE_EXISTING);
+                moved.add(target);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Removes the top directory and everything within it.
+     */
+    @Override
+    public void close() {
+        try {
+            Files.walkFileTree(topDirectory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Unable to remove " + topDirectory + ": " + e);
+        }
+    }
+}
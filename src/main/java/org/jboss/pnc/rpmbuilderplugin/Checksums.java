@@ -0,0 +1,145 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Computes several checksums of a file in a single read. Digests may either be computed directly or accumulated while
+ * another consumer (such as the zip) reads the file.
+ */
+final class Checksums {
+
+    /**
+     * The name of the combined SHA-256 checksum file, in the format produced by <code>sha256sum</code>.
+     */
+    static final String SUMS_FILENAME = "SHA256SUMS";
+
+    static final String SHA256 = "SHA-256";
+
+    private Checksums() {
+    }
+
+    /**
+     * Verifies that every algorithm is available.
+     *
+     * @throws IllegalArgumentException naming the first unknown algorithm
+     */
+    static void validate(List<String> algorithms) {
+        algorithms.forEach(Checksums::newDigest);
+    }
+
+    /**
+     * Reads the file once, computing every algorithm.
+     *
+     * @return hex encoded checksums keyed by algorithm
+     */
+    static Map<String, String> compute(Path file, List<String> algorithms) throws IOException {
+        AtomicReference<Map<String, String>> result = new AtomicReference<>();
+        try (InputStream in = digesting(Files.newInputStream(file), algorithms, result::set)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return result.get();
+    }
+
+    /**
+     * Wraps the stream so that every algorithm is computed as it is read. Once the stream has been read to the end and
+     * closed the checksums are passed to the consumer; a stream closed early reports nothing.
+     */
+    static InputStream digesting(InputStream in, List<String> algorithms, Consumer<Map<String, String>> onComplete) {
+        Map<String, MessageDigest> digests = new LinkedHashMap<>();
+        algorithms.forEach(algorithm -> digests.put(algorithm, newDigest(algorithm)));
+        return new FilterInputStream(in) {
+            private boolean complete;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    complete = true;
+                } else {
+                    digests.values().forEach(d -> d.update((byte) b));
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read == -1) {
+                    complete = true;
+                } else {
+                    digests.values().forEach(d -> d.update(buffer, offset, read));
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // Skipped bytes must still be digested.
+                byte[] buffer = new byte[8192];
+                long skipped = 0;
+                int read;
+                while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1) {
+                    skipped += read;
+                }
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (complete) {
+                    complete = false;
+                    Map<String, String> checksums = new LinkedHashMap<>();
+                    digests.forEach((algorithm, digest) -> checksums.put(algorithm, toHex(digest.digest())));
+                    onComplete.accept(checksums);
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes a checksum file in the format used by <code>sha256sum</code> and friends.
+     *
+     * @param file the file to write
+     * @param checksums hex encoded checksums keyed by relative path
+     */
+    static void writeSums(Path file, Map<String, String> checksums) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : checksums.entrySet()) {
+                writer.write(entry.getValue() + "  " + entry.getKey() + "\n");
+            }
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown checksum algorithm " + algorithm, e);
+        }
+    }
+}
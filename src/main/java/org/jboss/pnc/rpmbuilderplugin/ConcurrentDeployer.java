@@ -0,0 +1,257 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryListener;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.deployment.DeployRequest;
+import org.eclipse.aether.deployment.DeploymentException;
+import org.eclipse.aether.impl.RepositoryConnectorProvider;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.ArtifactUpload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.transfer.NoRepositoryConnectorException;
+
+/**
+ * Deploys artifacts concurrently, each group (an artifact and any files accompanying it such as provided checksums)
+ * uploaded independently of the others through its own repository connector. Each upload is retried with an exponential
+ * backoff and every failure is reported once all uploads have completed. As every group of a batch shares the one
+ * <code>maven-metadata.xml</code>, which a {@link DeployRequest} downloads, updates and uploads again, only the last
+ * group of each batch is deployed with a request, once the others have been uploaded, so that the metadata is updated
+ * once rather than concurrently. The groups of several modules, each with their own repository and session, may be
+ * deployed together over the one pool.
+ */
+final class ConcurrentDeployer {
+
+    /**
+     * The groups of artifacts to deploy to a repository within a session.
+     *
+     * @param session the repository session to deploy within
+     * @param repository the repository to deploy to
+     * @param groups the artifacts to deploy, each uploaded independently
+     */
+    record Batch(RepositorySystemSession session, RemoteRepository repository, List<List<Artifact>> groups) {
+    }
+
+    /**
+     * The longest delay before a retry, however many attempts have failed.
+     */
+    static final long MAX_RETRY_DELAY = 300_000;
+
+    private final Log log;
+
+    private final RepositorySystem repositorySystem;
+
+    private final RepositoryConnectorProvider connectorProvider;
+
+    private final int threads;
+
+    private final int retries;
+
+    private final long retryDelay;
+
+    /**
+     * @param log the logger
+     * @param repositorySystem the repository system to deploy the last group of each batch, and its metadata, with
+     * @param connectorProvider the provider of the connectors the other groups are uploaded through
+     * @param threads the maximum number of concurrent uploads
+     * @param retries the number of times a failed upload is retried
+     * @param retryDelay the delay in milliseconds before the first retry; it doubles on each subsequent retry up to
+     *        {@link #MAX_RETRY_DELAY}
+     */
+    ConcurrentDeployer(
+            Log log,
+            RepositorySystem repositorySystem,
+            RepositoryConnectorProvider connectorProvider,
+            int threads,
+            int retries,
+            long retryDelay) {
+        this.log = log;
+        this.repositorySystem = repositorySystem;
+        this.connectorProvider = connectorProvider;
+        this.threads = Math.max(1, threads);
+        this.retries = Math.max(0, retries);
+        this.retryDelay = Math.min(MAX_RETRY_DELAY, Math.max(0, retryDelay));
+    }
+
+    /**
+     * Deploys the groups of artifacts, waiting for every upload to complete. The first artifact of each group names it.
+     *
+     * @param session the repository session
+     * @param repository the repository to deploy to
+     * @param groups the artifacts to deploy, each uploaded independently
+     * @throws MojoExecutionException listing every group that could not be deployed
+     */
+    void deploy(RepositorySystemSession session, RemoteRepository repository, List<List<Artifact>> groups)
+            throws MojoExecutionException {
+        deploy(List.of(new Batch(session, repository, groups)));
+    }
+
+    /**
+     * Deploys the batches of artifacts over the one pool, waiting for every upload to complete. The last group of each
+     * batch, along with the metadata, is only deployed once every other group has been uploaded.
+     *
+     * @param batches the artifacts to deploy
+     * @throws MojoExecutionException listing every group that could not be deployed
+     */
+    void deploy(List<Batch> batches) throws MojoExecutionException {
+        int total = batches.stream().mapToInt(batch -> batch.groups().size()).sum();
+        if (total == 0) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, total));
+        try {
+            List<Map.Entry<String, Future<?>>> uploads = new ArrayList<>();
+            for (Batch batch : batches) {
+                for (List<Artifact> group : batch.groups().subList(0, batch.groups().size() - 1)) {
+                    uploads.add(submit(executor, group, () -> {
+                        upload(batch, group);
+                        return null;
+                    }));
+                }
+            }
+            List<String> failures = await(uploads);
+            // The metadata is only deployed once every artifact it lists has been.
+            if (failures.isEmpty()) {
+                List<Map.Entry<String, Future<?>>> requests = new ArrayList<>();
+                for (Batch batch : batches) {
+                    if (!batch.groups().isEmpty()) {
+                        List<Artifact> group = batch.groups().get(batch.groups().size() - 1);
+                        requests.add(submit(executor, group, () -> {
+                            deploy(batch, group);
+                            return null;
+                        }));
+                    }
+                }
+                failures = await(requests);
+            }
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException(
+                        "Unable to deploy " + failures.size() + " of " + total + " rpms: " + failures);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while deploying rpms", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map.Entry<String, Future<?>> submit(
+            ExecutorService executor,
+            List<Artifact> group,
+            Callable<Void> upload) {
+        return new AbstractMap.SimpleImmutableEntry<>(group.get(0).getFile().getName(), executor.submit(upload));
+    }
+
+    /**
+     * Waits for every upload, returning a description of each that failed.
+     */
+    private List<String> await(Collection<Map.Entry<String, Future<?>>> uploads) throws InterruptedException {
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, Future<?>> upload : uploads) {
+            try {
+                upload.getValue().get();
+            } catch (ExecutionException e) {
+                log.error("Unable to deploy " + upload.getKey(), e.getCause());
+                failures.add(upload.getKey() + " (" + e.getCause().getMessage() + ")");
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Uploads the group through a repository connector, without touching the metadata. The deploy events a
+     * {@link DeployRequest} would fire are fired to the session's listener, which may be recording a deploy journal.
+     */
+    private void upload(Batch batch, List<Artifact> group) throws DeploymentException, InterruptedException {
+        if (batch.session().isOffline()) {
+            throw new DeploymentException("Cannot deploy while " + batch.repository() + " is offline");
+        }
+        retry(group, () -> {
+            List<ArtifactUpload> uploads = group.stream()
+                    .map(artifact -> new ArtifactUpload(artifact, artifact.getFile()))
+                    .toList();
+            uploads.forEach(upload -> fire(batch, RepositoryEvent.EventType.ARTIFACT_DEPLOYING, upload));
+            try (RepositoryConnector connector = connectorProvider
+                    .newRepositoryConnector(batch.session(), batch.repository())) {
+                connector.put(uploads, null);
+            } catch (NoRepositoryConnectorException e) {
+                throw new DeploymentException("Unable to deploy to " + batch.repository(), e);
+            }
+            uploads.forEach(upload -> fire(batch, RepositoryEvent.EventType.ARTIFACT_DEPLOYED, upload));
+            for (ArtifactUpload upload : uploads) {
+                if (upload.getException() != null) {
+                    throw new DeploymentException(
+                            "Failed to deploy " + upload.getArtifact() + ": " + upload.getException().getMessage(),
+                            upload.getException());
+                }
+            }
+        });
+    }
+
+    private void fire(Batch batch, RepositoryEvent.EventType type, ArtifactUpload upload) {
+        RepositoryListener listener = batch.session().getRepositoryListener();
+        if (listener != null) {
+            RepositoryEvent event = new RepositoryEvent.Builder(batch.session(), type)
+                    .setArtifact(upload.getArtifact())
+                    .setRepository(batch.repository())
+                    .setException(upload.getException())
+                    .build();
+            if (type == RepositoryEvent.EventType.ARTIFACT_DEPLOYING) {
+                listener.artifactDeploying(event);
+            } else {
+                listener.artifactDeployed(event);
+            }
+        }
+    }
+
+    /**
+     * Deploys the group with a request, so that the metadata is updated and uploaded along with it.
+     */
+    private void deploy(Batch batch, List<Artifact> group) throws DeploymentException, InterruptedException {
+        DeployRequest request = new DeployRequest();
+        request.setRepository(batch.repository());
+        request.setArtifacts(group);
+        retry(group, () -> repositorySystem.deploy(batch.session(), request));
+    }
+
+    private interface Attempt {
+        void run() throws DeploymentException;
+    }
+
+    private void retry(List<Artifact> group, Attempt attempt) throws DeploymentException, InterruptedException {
+        String name = group.get(0).getFile().getName();
+        for (int failures = 0;; failures++) {
+            try {
+                attempt.run();
+                log.info("Deployed " + name);
+                return;
+            } catch (DeploymentException e) {
+                if (failures >= retries) {
+                    throw e;
+                }
+                // The shift is bounded so that the delay cannot overflow before it is capped.
+                long delay = Math.min(MAX_RETRY_DELAY, retryDelay * (1L << Math.min(failures, 20)));
+                log.warn(
+                        "Failed to deploy " + name + " (attempt " + (failures + 1) + " of "
+                                + (retries + 1) + "); retrying in " + delay + "ms: " + e.getMessage());
+                Thread.sleep(delay);
+            }
+        }
+    }
+}
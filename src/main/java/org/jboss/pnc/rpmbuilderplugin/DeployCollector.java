@@ -0,0 +1,158 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Collects the deployments prepared by the modules of a reactor with <code>deployAtEnd</code> set, so that the last
+ * module to run the deploy goal publishes them all together. Every execution of the goal registers, whether or not it
+ * defers its deployment, as the collector only knows which modules run the goal rather than how each is configured.
+ * It is shared by the modules through the repository session. Once any module has failed nothing is published.
+ */
+final class DeployCollector {
+
+    /**
+     * The deployment prepared by a module: its verified, checksummed groups of artifacts, less any already uploaded.
+     *
+     * @param project the module
+     * @param session the repository session to deploy within, recording uploads in the journal if there is one
+     * @param repository the repository to deploy to
+     * @param groups the artifacts to deploy, one request per group
+     * @param repodata the repodata to deploy once the rpms have been, or null
+     * @param journal the deploy journal to remove once published, or null
+     * @param threads the number of concurrent uploads configured by the module
+     */
+    record Deployment(
+            MavenProject project,
+            RepositorySystemSession session,
+            RemoteRepository repository,
+            List<List<Artifact>> groups,
+            Path repodata,
+            DeployJournal journal,
+            int threads) {
+    }
+
+    private final Set<String> expected;
+
+    private final Set<String> registered = new LinkedHashSet<>();
+
+    private final List<Deployment> deployments = new ArrayList<>();
+
+    private final List<String> failed = new ArrayList<>();
+
+    private DeployCollector(Set<String> expected) {
+        this.expected = expected;
+    }
+
+    /**
+     * Returns the collector of the session, creating it on first use.
+     *
+     * @param session the session
+     * @param execution the execution of the deploy goal, identifying the plugin and goal the modules run
+     * @return the collector
+     */
+    static DeployCollector get(MavenSession session, MojoExecution execution) {
+        return (DeployCollector) session.getRepositorySession()
+                .getData()
+                .computeIfAbsent(DeployCollector.class, () -> new DeployCollector(findExpected(session, execution)));
+    }
+
+    /**
+     * Returns the ids of the modules which run the goal: every module of the reactor if it was invoked directly,
+     * otherwise those binding it in an execution of the plugin. The build plugins of a module include those bound by
+     * the lifecycle mapping of its packaging, as these are injected into its model.
+     */
+    private static Set<String> findExpected(MavenSession session, MojoExecution execution) {
+        Set<String> expected = new LinkedHashSet<>();
+        String key = execution.getPlugin().getKey();
+        for (MavenProject project : session.getProjects()) {
+            if (execution.getSource() == MojoExecution.Source.CLI || runsGoal(project, key, execution.getGoal())) {
+                expected.add(project.getId());
+            }
+        }
+        return expected;
+    }
+
+    private static boolean runsGoal(MavenProject project, String key, String goal) {
+        for (Plugin plugin : project.getBuildPlugins()) {
+            if (plugin.getKey().equals(key)) {
+                for (PluginExecution execution : plugin.getExecutions()) {
+                    if (execution.getGoals().contains(goal)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers the module as having run the goal, along with any deployment it defers.
+     *
+     * @param project the module
+     * @param deployment the deployment, or null if the module has nothing to defer
+     * @return every deployment collected if this module was the last to register, so that the caller is to publish
+     *         them, otherwise empty
+     * @throws MojoExecutionException if the module defers a deployment but was not expected to run the goal, as then
+     *         the last module to run it cannot be told
+     */
+    synchronized Optional<List<Deployment>> register(MavenProject project, Deployment deployment)
+            throws MojoExecutionException {
+        registered.add(project.getId());
+        // A module deploying immediately is unaffected by when the others are published, so need not be expected.
+        if (deployment != null && !expected.contains(project.getId())) {
+            failed.add(project.getId());
+            throw new MojoExecutionException(
+                    project.getId() + " ran the deploy goal but is not among the modules expected to run it "
+                            + expected + ", so the last module to deploy cannot be determined");
+        }
+        if (deployment != null) {
+            deployments.add(deployment);
+        }
+        if (!registered.containsAll(expected) || deployments.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Deployment> result = List.copyOf(deployments);
+        deployments.clear();
+        return Optional.of(result);
+    }
+
+    /**
+     * Records that the module failed to prepare or deploy its rpms, so that nothing is published. The module counts as
+     * registered, so that the last module to register reports the failure rather than waiting on it.
+     */
+    synchronized void fail(MavenProject project) {
+        registered.add(project.getId());
+        failed.add(project.getId());
+    }
+
+    /**
+     * Returns the ids of the modules which failed.
+     */
+    synchronized List<String> getFailed() {
+        return List.copyOf(failed);
+    }
+
+    /**
+     * Returns the ids of the modules yet to register.
+     */
+    synchronized List<String> getRemaining() {
+        List<String> remaining = new ArrayList<>(expected);
+        remaining.removeAll(registered);
+        return remaining;
+    }
+}
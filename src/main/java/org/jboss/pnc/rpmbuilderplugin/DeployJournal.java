@@ -0,0 +1,135 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryListener;
+
+/**
+ * A record of the artifacts confirmed as uploaded by an incomplete deploy, so that a retry can resume from the first
+ * artifact not yet uploaded. Each artifact is recorded, by file name, with the SHA-256 checksum of the rpm it belongs
+ * to, in the same format as a <code>SHA256SUMS</code> file, following a line naming the repository. Entries are
+ * appended as each upload completes so that the journal survives the build being killed. The journal is discarded if
+ * it was written for another repository or if any rpm it records has since changed.
+ */
+final class DeployJournal {
+
+    static final String FILENAME = "rpm-deploy-journal.txt";
+
+    private static final String REPOSITORY_PREFIX = "# repository ";
+
+    private final Log log;
+
+    private final Path file;
+
+    private final Map<String, String> uploaded = new HashMap<>();
+
+    private DeployJournal(Log log, Path file) {
+        this.log = log;
+        this.file = file;
+    }
+
+    /**
+     * Opens the journal, discarding it if it was written for another repository or any of the artifacts it records
+     * have since changed.
+     *
+     * @param log the logger
+     * @param file the journal
+     * @param repository the URL of the repository being deployed to
+     * @param checksums the SHA-256 checksum of the rpm each artifact to be deployed belongs to, keyed by file name
+     * @return the journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    static DeployJournal open(Log log, Path file, String repository, Map<String, String> checksums)
+            throws IOException {
+        DeployJournal journal = new DeployJournal(log, file);
+        if (Files.isRegularFile(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(REPOSITORY_PREFIX + repository)) {
+                log.info("Discarding deploy journal " + file + " as it was written for another repository");
+            } else {
+                for (String line : lines.subList(1, lines.size())) {
+                    int separator = line.indexOf("  ");
+                    if (separator > 0) {
+                        journal.uploaded.put(line.substring(separator + 2), line.substring(0, separator));
+                    }
+                }
+                for (Map.Entry<String, String> entry : journal.uploaded.entrySet()) {
+                    String checksum = checksums.get(entry.getKey());
+                    if (checksum != null && !checksum.equals(entry.getValue())) {
+                        log.info(
+                                "Discarding deploy journal " + file + " as " + entry.getKey()
+                                        + " has changed since it was written");
+                        journal.uploaded.clear();
+                        break;
+                    }
+                }
+            }
+        }
+        if (journal.uploaded.isEmpty()) {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, REPOSITORY_PREFIX + repository + "\n", StandardCharsets.UTF_8);
+        }
+        return journal;
+    }
+
+    /**
+     * Whether the artifact was uploaded with the given checksum.
+     */
+    boolean isUploaded(String name, String checksum) {
+        return checksum.equals(uploaded.get(name));
+    }
+
+    /**
+     * Records that the artifact has been uploaded.
+     */
+    synchronized void record(String name, String checksum) throws IOException {
+        Files.writeString(
+                file,
+                checksum + "  " + name + "\n",
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        uploaded.put(name, checksum);
+    }
+
+    /**
+     * Returns a listener which records each artifact with a known checksum as it is deployed.
+     *
+     * @param checksums the SHA-256 checksum of the rpm each artifact belongs to, keyed by file name
+     */
+    RepositoryListener newListener(Map<String, String> checksums) {
+        return new AbstractRepositoryListener() {
+            @Override
+            public void artifactDeployed(RepositoryEvent event) {
+                if (event.getException() != null || event.getArtifact().getFile() == null) {
+                    return;
+                }
+                String name = event.getArtifact().getFile().getName();
+                String checksum = checksums.get(name);
+                if (checksum != null) {
+                    try {
+                        record(name, checksum);
+                    } catch (IOException e) {
+                        log.warn("Unable to record " + name + " in deploy journal " + file + ": " + e);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the journal once every artifact has been deployed.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+}
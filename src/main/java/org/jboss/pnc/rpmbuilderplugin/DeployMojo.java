@@ -4,40 +4,57 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
-import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.deployment.DeployRequest;
 import org.eclipse.aether.deployment.DeploymentException;
+import org.eclipse.aether.impl.RepositoryConnectorProvider;
 import org.eclipse.aether.internal.impl.DefaultRepositoryLayoutProvider;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.checksum.ChecksumAlgorithmFactory;
 import org.eclipse.aether.spi.connector.checksum.ChecksumAlgorithmFactorySelector;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayoutFactory;
 import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
 
 /**
  * Deploy the built rpms to a specified repository.
  */
-@Mojo(name = "deploy", defaultPhase = LifecyclePhase.DEPLOY)
+@Mojo(name = "deploy", defaultPhase = LifecyclePhase.DEPLOY, threadSafe = true)
 public class DeployMojo extends BaseMojo {
 
     private static final Pattern ALT_LEGACY_REPO_SYNTAX_PATTERN = Pattern.compile("(.+?)::(.+?)::(.+)");
 
     private static final Pattern ALT_REPO_SYNTAX_PATTERN = Pattern.compile("(.+?)::(.+)");
 
-    @Inject
-    protected MavenSession session;
-
     @Inject
     private RepositorySystem repositorySystem;
 
@@ -47,11 +64,21 @@ public class DeployMojo extends BaseMojo {
     /**
      * The DefaultDeployer uses DefaultRepositoryConnectionProvider which uses BasicRepositoryConnectorFactory
      * which uses DefaultRepositoryLayoutProvider which uses RepositoryLayoutFactory which is a
-     * Maven2RepositoryLayoutFactory. By overriding the layout provider, we can change how the files are deployed.
+     * Maven2RepositoryLayoutFactory. By registering another layout factory with the layout provider, for the content
+     * type of the rpm repository, we can change how the files are deployed.
      */
     @Inject
     private RepositoryLayoutProvider repositoryLayoutProvider;
 
+    /**
+     * The layout factories the layout provider is created with, to which the rpm layout is added.
+     */
+    @Inject
+    private Map<String, RepositoryLayoutFactory> repositoryLayoutFactories;
+
+    @Inject
+    private RepositoryConnectorProvider repositoryConnectorProvider;
+
     /**
      * Target URI deployment repository. This should support the same format as altDeploymentRepository. Falls back
      * to the value of the user property altDeploymentRepository.
@@ -65,30 +92,158 @@ public class DeployMojo extends BaseMojo {
     @Parameter(defaultValue = "false", property = "rpm.deploy.skip")
     private boolean skip;
 
+    /**
+     * The number of rpms to upload concurrently. With a value greater than one each rpm is deployed individually,
+     * retried on failure, and any failures are reported once every upload has completed. The metadata is deployed
+     * once, with the last rpm, after the others have been uploaded.
+     */
+    @Parameter(defaultValue = "1", property = "rpm.deploy.threads")
+    private int deployThreads = 1;
+
+    /**
+     * The number of times a failed upload is retried when deploying concurrently.
+     */
+    @Parameter(defaultValue = "3", property = "rpm.deploy.retries")
+    private int deployRetries = 3;
+
+    /**
+     * The delay in milliseconds before a failed upload is first retried when deploying concurrently. The delay doubles
+     * with each subsequent retry, up to five minutes.
+     */
+    @Parameter(defaultValue = "1000", property = "rpm.deploy.retryDelay")
+    private long deployRetryDelay = 1000;
+
+    /**
+     * Whether to skip uploading those artifacts which the repository already has with identical checksums. Before
+     * uploading, the checksum files alongside each artifact are fetched from the repository and compared with the
+     * local checksums.
+     */
+    @Parameter(defaultValue = "false", property = "rpm.deploy.skipExisting")
+    private boolean skipExisting;
+
+    /**
+     * Whether to record each artifact as it is uploaded in a journal within the build directory, so that if the
+     * deploy fails a retry resumes with the artifacts not yet uploaded. The journal is removed once the deploy
+     * completes and is ignored if any rpm has changed since it was written.
+     */
+    @Parameter(defaultValue = "true", property = "rpm.deploy.journal")
+    private boolean deployJournal = true;
+
+    /**
+     * Whether to deploy RPMs built with the <code>fast</code> build mode, which are otherwise refused as they lack the
+     * source RPM, debuginfo and the results of <code>%check</code>.
+     */
+    @Parameter(defaultValue = "false", property = "rpm.deploy.allowFastBuild")
+    private boolean allowFastBuild;
+
+    /**
+     * Whether to verify the lead, the header digest and the payload digest of each rpm before any is uploaded. Those
+     * verified by the package goal, and unchanged since, are not read again.
+     */
+    @Parameter(defaultValue = "true", property = "rpm.deploy.verify")
+    private boolean verify = true;
+
+    /**
+     * Whether to defer the upload until every module of the reactor running this goal has prepared its rpms, the last
+     * of them then uploading the rpms of all over one pool of threads. Nothing is uploaded if any module fails. The
+     * pool has the largest number of threads configured by any module, while the retries and retry delay are those
+     * configured by the last module, which apply to the uploads of every module.
+     */
+    @Parameter(defaultValue = "false", property = "rpm.deploy.deployAtEnd")
+    private boolean deployAtEnd;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+    private MojoExecution mojoExecution;
+
     @Override
     public void execute() throws MojoExecutionException {
+        DeployCollector collector = DeployCollector.get(session, mojoExecution);
         if (skip) {
             getLog().info("Skipping RPM deployment");
-            return;
         } else if (isEmpty(rpmDeploymentRepository)) {
             String altDeploymentRepository = System.getProperty("altDeploymentRepository");
             if (isEmpty(altDeploymentRepository)) {
+                collector.fail(project);
                 throw new MojoExecutionException(
                         "No rpmDeploymentRepository or altDeploymentRepository specified (or skip via '-Drpm.deploy.skip')");
             }
             rpmDeploymentRepository = altDeploymentRepository;
         }
 
+        BuildMetrics metrics = new BuildMetrics(project.getId(), "deploy");
+        boolean success = false;
+        boolean report = !skip;
         try {
-            List<File> rpms = findRPMs(outputDirectory.toPath());
-            if (repositoryLayoutProvider instanceof DefaultRepositoryLayoutProvider) {
-                ((DefaultRepositoryLayoutProvider) repositoryLayoutProvider).setRepositoryLayoutFactories(
-                        Collections.singletonList(
-                                new IndyGenericRepositoryLayoutFactory(checksumAlgorithmFactorySelector)));
-            } else {
-                throw new MojoExecutionException(
-                        "Unknown repository layout provider " + repositoryLayoutProvider.getClass().getName());
+            DeployCollector.Deployment deployment = null;
+            if (!skip) {
+                try {
+                    deployment = prepare(metrics);
+                    if (!deployAtEnd) {
+                        publish(List.of(deployment), metrics);
+                        deployment = null;
+                    }
+                } catch (MojoExecutionException | RuntimeException e) {
+                    collector.fail(project);
+                    throw e;
+                }
+            }
+            // Every module registers, deferring or not, so that the last to run the goal publishes the deferred.
+            Optional<List<DeployCollector.Deployment>> deferred = collector.register(project, deployment);
+            if (deferred.isPresent()) {
+                report = true;
+                publishDeferred(collector, deferred.get(), metrics);
+            } else if (deployment != null) {
+                getLog().info(
+                        "Deferring the deploy until " + collector.getRemaining() + " have run the deploy goal");
             }
+            success = true;
+        } finally {
+            if (report) {
+                writeMetrics(metrics, success);
+            }
+        }
+    }
+
+    /**
+     * Publishes the deployments deferred by the modules of the reactor, unless any module has failed.
+     */
+    private void publishDeferred(
+            DeployCollector collector,
+            List<DeployCollector.Deployment> deployments,
+            BuildMetrics metrics) throws MojoExecutionException {
+        List<String> failed = collector.getFailed();
+        if (!failed.isEmpty() || session.getResult().hasExceptions()) {
+            throw new MojoExecutionException(
+                    "Not deploying the rpms of " + deployments.size() + " modules as "
+                            + (failed.isEmpty() ? "the reactor has failed" : failed + " failed"));
+        }
+        getLog().info(
+                "Deploying the rpms of " + deployments.stream().map(d -> d.project().getArtifactId()).toList());
+        publish(deployments, metrics);
+    }
+
+    /**
+     * Verifies and checksums the rpms and determines which are to be uploaded, without uploading any.
+     */
+    private DeployCollector.Deployment prepare(BuildMetrics metrics) throws MojoExecutionException {
+        try {
+            List<File> rpms;
+            Map<Path, Map<String, String>> providedChecksums;
+            try (BuildMetrics.Phase phase = metrics.start("scan")) {
+                rpms = findBuiltRPMs();
+                providedChecksums = readProvidedChecksums();
+                rpms.forEach(rpm -> phase.addFile(rpm.toPath()));
+            }
+            Optional<RPMManifest> manifest = RPMManifest.read(outputDirectory.toPath().resolve(RPMManifest.FILENAME));
+            if (manifest.isPresent() && manifest.get().getMode().equals(BuildMode.FAST.getName())) {
+                if (!allowFastBuild) {
+                    throw new MojoExecutionException(
+                            "Refusing to deploy rpms built in fast mode; rebuild with another buildMode or set "
+                                    + "rpm.deploy.allowFastBuild");
+                }
+                getLog().warn("Deploying rpms built in fast mode");
+            }
+            registerLayoutFactory();
 
             // This matcher block is a direct copy of https://github.com/apache/maven-deploy-plugin/blob/maven-deploy-plugin-3.1.4/src/main/java/org/apache/maven/plugins/deploy/DeployMojo.java#L370 as unfortunately that code has not been
             // exposed for reuse.
@@ -126,33 +281,326 @@ public class DeployMojo extends BaseMojo {
 
             RemoteRepository remoteRepository = new RemoteRepository.Builder(
                     id,
-                    "default",
+                    IndyGenericRepositoryLayoutFactory.CONTENT_TYPE,
                     url).build();
             remoteRepository = repositorySystem
                     .newDeploymentRepository(session.getRepositorySession(), remoteRepository);
 
             getLog().info("Got RPM deployment repository: " + remoteRepository);
 
-            DeployRequest request = new DeployRequest();
-            request.setRepository(remoteRepository);
-
             getLog().info("Deploying " + rpms + " to " + url);
 
-            rpms.forEach(
-                    path -> request.addArtifact(
-                            new DefaultArtifact(
-                                    project.getGroupId(),
-                                    project.getArtifactId(),
-                                    null,
-                                    "rpm",
-                                    project.getVersion(),
-                                    null,
-                                    path)));
+            // Each rpm is deployed along with its checksums. Where those were computed by the package goal they are
+            // uploaded from the manifest rather than computed again.
+            List<ChecksumAlgorithmFactory> algorithms = IndyGenericRepositoryLayoutFactory.selectChecksumAlgorithms(
+                    checksumAlgorithmFactorySelector,
+                    session.getRepositorySession(),
+                    remoteRepository);
+            List<String> names = new ArrayList<>();
+            algorithms.forEach(algorithm -> names.add(algorithm.getName()));
+            if (!names.contains(Checksums.SHA256)) {
+                names.add(Checksums.SHA256);
+            }
+            // The checksums are computed as the rpms are verified, so that they are only read once.
+            Map<Path, Map<String, String>> verifiedChecksums = new ConcurrentHashMap<>();
+            if (verify) {
+                // The provided checksums are only those of rpms unchanged in size and time since they were packaged.
+                Set<Path> verified = manifest.isPresent() && manifest.get().isVerified() ? providedChecksums.keySet()
+                        : Set.of();
+                List<File> unverified = rpms.stream()
+                        .filter(rpm -> !verified.contains(rpm.toPath().toAbsolutePath()))
+                        .toList();
+                try (BuildMetrics.Phase phase = metrics.start("verify")) {
+                    RPMVerifier.verifyAll(
+                            unverified,
+                            names,
+                            HostResources.availableProcessors(getLog()),
+                            (rpm, checksums) -> verifiedChecksums.put(rpm.toPath().toAbsolutePath(), checksums));
+                    unverified.forEach(rpm -> phase.addFile(rpm.toPath()));
+                } catch (RPMVerifier.VerificationException e) {
+                    throw new MojoExecutionException("Refusing to deploy corrupt rpms: " + e.getMessage(), e);
+                }
+                getLog().info(
+                        "Verified " + unverified.size() + " rpms; " + (rpms.size() - unverified.size())
+                                + " were verified by the package goal");
+            }
+            Path checksumDirectory = outputDirectory.toPath().resolve("checksums");
+            List<List<Artifact>> groups = new ArrayList<>();
+            Map<Artifact, Map<String, String>> localChecksums = new HashMap<>();
+            try (BuildMetrics.Phase phase = metrics.start("checksum")) {
+                for (File rpm : rpms) {
+                    List<Artifact> group = new ArrayList<>();
+                    Map<String, String> checksums = providedChecksums.get(rpm.toPath().toAbsolutePath());
+                    boolean provided = IndyGenericRepositoryLayoutFactory.isProvided(checksums, algorithms);
+                    Artifact artifact = newArtifact("rpm", rpm);
+                    group.add(provided ? IndyGenericRepositoryLayoutFactory.withProvidedChecksums(artifact) : artifact);
+                    if (provided) {
+                        Files.createDirectories(checksumDirectory);
+                        for (ChecksumAlgorithmFactory algorithm : algorithms) {
+                            Path checksum = checksumDirectory
+                                    .resolve(rpm.getName() + "." + algorithm.getFileExtension());
+                            Files.writeString(checksum, checksums.get(algorithm.getName()), StandardCharsets.UTF_8);
+                            group.add(newArtifact("rpm." + algorithm.getFileExtension(), checksum.toFile()));
+                            phase.addFile(checksum);
+                        }
+                    }
+                    groups.add(group);
+                }
+                File sums = new File(outputDirectory, Checksums.SUMS_FILENAME);
+                if (sums.isFile()) {
+                    groups.add(List.of(newArtifact("sums", sums)));
+                }
+                // Both the journal and the check for deployed artifacts compare the checksums of each group's primary.
+                if (skipExisting || deployJournal) {
+                    for (List<Artifact> group : groups) {
+                        Path file = group.get(0).getFile().toPath().toAbsolutePath();
+                        Map<String, String> checksums = providedChecksums.get(file);
+                        if (checksums == null || !checksums.keySet().containsAll(names)) {
+                            checksums = verifiedChecksums.get(file);
+                        }
+                        if (checksums == null || !checksums.keySet().containsAll(names)) {
+                            checksums = Checksums.compute(file, names);
+                            phase.addFile(file);
+                        }
+                        localChecksums.put(group.get(0), checksums);
+                    }
+                }
+            }
 
-            repositorySystem.deploy(session.getRepositorySession(), request);
+            DeployJournal journal = null;
+            Map<String, String> journalChecksums = new HashMap<>();
+            if (deployJournal) {
+                for (List<Artifact> group : groups) {
+                    String checksum = localChecksums.get(group.get(0)).get(Checksums.SHA256);
+                    group.forEach(artifact -> journalChecksums.put(artifact.getFile().getName(), checksum));
+                }
+                journal = DeployJournal.open(
+                        getLog(),
+                        outputDirectory.toPath().resolve(DeployJournal.FILENAME),
+                        remoteRepository.getUrl(),
+                        journalChecksums);
+                int total = groups.size();
+                DeployJournal previous = journal;
+                groups.removeIf(
+                        group -> group.stream().allMatch(artifact -> {
+                            String name = artifact.getFile().getName();
+                            return previous.isUploaded(name, journalChecksums.get(name));
+                        }));
+                if (groups.size() < total) {
+                    getLog().info(
+                            "Resuming deploy: " + (total - groups.size()) + " of " + total
+                                    + " artifacts were uploaded by a previous attempt");
+                }
+            }
 
+            if (skipExisting) {
+                try (BuildMetrics.Phase phase = metrics.start("preflight")) {
+                    skipDeployed(groups, localChecksums, algorithms, remoteRepository);
+                }
+            }
+
+            RepositorySystemSession repositorySession = session.getRepositorySession();
+            if (journal != null) {
+                repositorySession = new DefaultRepositorySystemSession(repositorySession).setRepositoryListener(
+                        ChainedRepositoryListener.newInstance(
+                                repositorySession.getRepositoryListener(),
+                                journal.newListener(journalChecksums)));
+            }
+            Path repodata = outputDirectory.toPath().resolve(RepodataMojo.DEPLOY_DIRECTORY).resolve("repodata");
+            if (Files.isDirectory(repodata)) {
+                checkRepodata(repodata, rpms);
+            }
+            return new DeployCollector.Deployment(
+                    project,
+                    repositorySession,
+                    remoteRepository,
+                    groups,
+                    Files.isDirectory(repodata) ? repodata : null,
+                    journal,
+                    deployThreads);
+        } catch (IOException e) {
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * Uploads the rpms of the deployments, over one pool of threads if any deployment is concurrent, then their
+     * repodata. The journals are removed once everything has been deployed.
+     */
+    private void publish(List<DeployCollector.Deployment> deployments, BuildMetrics metrics)
+            throws MojoExecutionException {
+        try {
+            try (BuildMetrics.Phase phase = metrics.start("upload")) {
+                List<ConcurrentDeployer.Batch> batches = new ArrayList<>();
+                for (DeployCollector.Deployment deployment : deployments) {
+                    deployment.groups()
+                            .stream()
+                            .flatMap(List::stream)
+                            .forEach(artifact -> phase.addFile(artifact.getFile().toPath()));
+                    if (!deployment.groups().isEmpty()) {
+                        batches.add(
+                                new ConcurrentDeployer.Batch(
+                                        deployment.session(),
+                                        deployment.repository(),
+                                        deployment.groups()));
+                    }
+                }
+                int threads = deployments.stream().mapToInt(DeployCollector.Deployment::threads).max().orElse(1);
+                if (batches.isEmpty()) {
+                    getLog().info("Nothing to deploy");
+                } else if (threads > 1) {
+                    new ConcurrentDeployer(
+                            getLog(),
+                            repositorySystem,
+                            repositoryConnectorProvider,
+                            threads,
+                            deployRetries,
+                            deployRetryDelay).deploy(batches);
+                } else {
+                    for (ConcurrentDeployer.Batch batch : batches) {
+                        DeployRequest request = new DeployRequest();
+                        request.setRepository(batch.repository());
+                        request.setArtifacts(
+                                batch.groups().stream().flatMap(List::stream).collect(Collectors.toList()));
+                        repositorySystem.deploy(batch.session(), request);
+                    }
+                }
+            }
+            for (DeployCollector.Deployment deployment : deployments) {
+                if (deployment.repodata() != null) {
+                    String subject = deployments.size() > 1 ? deployment.project().getArtifactId() : null;
+                    try (BuildMetrics.Phase phase = metrics.start("repodata", subject)) {
+                        deployRepodata(deployment, phase);
+                    }
+                }
+            }
+            for (DeployCollector.Deployment deployment : deployments) {
+                if (deployment.journal() != null) {
+                    deployment.journal().delete();
+                }
+            }
         } catch (IOException | DeploymentException e) {
             throw new MojoExecutionException(e);
         }
     }
+
+    /**
+     * Registers the rpm layout factory with the layout provider, once per session as the provider is shared by every
+     * module. The factories are replaced as a whole, rather than added to, so that any concurrent lookup of a layout
+     * continues with the collection it started with.
+     */
+    private void registerLayoutFactory() throws MojoExecutionException {
+        if (!(repositoryLayoutProvider instanceof DefaultRepositoryLayoutProvider provider)) {
+            throw new MojoExecutionException(
+                    "Unknown repository layout provider " + repositoryLayoutProvider.getClass().getName());
+        }
+        session.getRepositorySession().getData().computeIfAbsent(IndyGenericRepositoryLayoutFactory.class, () -> {
+            List<RepositoryLayoutFactory> factories = new ArrayList<>(repositoryLayoutFactories.values());
+            factories.removeIf(IndyGenericRepositoryLayoutFactory.class::isInstance);
+            factories.add(new IndyGenericRepositoryLayoutFactory(checksumAlgorithmFactorySelector));
+            provider.setRepositoryLayoutFactories(factories);
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Removes the groups whose first artifact the repository already has with identical checksums.
+     */
+    private void skipDeployed(
+            List<List<Artifact>> groups,
+            Map<Artifact, Map<String, String>> localChecksums,
+            List<ChecksumAlgorithmFactory> algorithms,
+            RemoteRepository remoteRepository) throws IOException {
+        Map<Artifact, Map<String, String>> local = new LinkedHashMap<>();
+        groups.forEach(group -> local.put(group.get(0), localChecksums.get(group.get(0))));
+        Set<Artifact> deployed = new RemoteChecksums(
+                getLog(),
+                repositoryConnectorProvider,
+                session.getRepositorySession(),
+                remoteRepository,
+                algorithms,
+                outputDirectory.toPath().resolve("remote-checksums"))
+                .findDeployed(local);
+
+        int total = groups.size();
+        long saved = 0;
+        for (Iterator<List<Artifact>> i = groups.iterator(); i.hasNext();) {
+            Artifact artifact = i.next().get(0);
+            if (deployed.contains(artifact)) {
+                getLog().info("Skipping " + artifact.getFile().getName() + " as it is already deployed");
+                saved += artifact.getFile().length();
+                i.remove();
+            }
+        }
+        getLog().info(
+                "Uploading " + groups.size() + " of " + total + " artifacts; skipped " + deployed.size()
+                        + " already deployed with identical checksums (" + saved + " bytes saved)");
+    }
+
+    /**
+     * Refuses to deploy repodata generated for other rpms than those being deployed, e.g. before they were rebuilt.
+     */
+    private void checkRepodata(Path repodata, List<File> rpms) throws IOException, MojoExecutionException {
+        Path stamp = repodata.resolveSibling(RepodataMojo.DEPLOY_STAMP);
+        if (!Files.isRegularFile(stamp)
+                || !Files.readString(stamp, StandardCharsets.UTF_8)
+                        .equals(RepodataMojo.describe(outputDirectory.toPath(), rpms))) {
+            throw new MojoExecutionException(
+                    "The repodata in " + repodata + " was not generated for the rpms being deployed; run the repodata "
+                            + "goal after the rpms are built, or remove " + repodata.getParent());
+        }
+    }
+
+    /**
+     * Deploys the repodata generated by the repodata goal beneath <code>repodata/</code>, once the rpms it describes
+     * have been deployed. The index, <code>repomd.xml</code>, is deployed last so that it never refers to metadata not
+     * yet deployed.
+     */
+    private void deployRepodata(DeployCollector.Deployment deployment, BuildMetrics.Phase phase)
+            throws IOException, DeploymentException {
+        Path repodata = deployment.repodata();
+        MavenProject owner = deployment.project();
+        List<Artifact> metadata = new ArrayList<>();
+        Artifact index = null;
+        try (Stream<Path> files = Files.list(repodata)) {
+            for (Path file : files.sorted().toList()) {
+                Artifact artifact = new DefaultArtifact(
+                        owner.getGroupId(),
+                        owner.getArtifactId(),
+                        null,
+                        "repodata",
+                        owner.getVersion(),
+                        Map.of(IndyGenericRepositoryLayoutFactory.LOCATION_PROPERTY, "repodata/" + file.getFileName()),
+                        file.toFile());
+                if (file.getFileName().toString().equals(RepodataWriter.REPOMD)) {
+                    index = artifact;
+                } else {
+                    metadata.add(artifact);
+                }
+                phase.addFile(file);
+            }
+        }
+        if (index == null) {
+            getLog().warn("Not deploying repodata as " + repodata + " has no " + RepodataWriter.REPOMD);
+            return;
+        }
+        getLog().info("Deploying repodata to " + deployment.repository().getUrl());
+        for (List<Artifact> artifacts : List.of(metadata, List.of(index))) {
+            DeployRequest request = new DeployRequest();
+            request.setRepository(deployment.repository());
+            request.setArtifacts(artifacts);
+            repositorySystem.deploy(deployment.session(), request);
+        }
+    }
+
+    private Artifact newArtifact(String extension, File file) {
+        return new DefaultArtifact(
+                project.getGroupId(),
+                project.getArtifactId(),
+                null,
+                extension,
+                project.getVersion(),
+                null,
+                file);
+    }
 }
@@ -0,0 +1,245 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps the extracted payload of each RPM in a directory named by the SHA-256 checksum of the RPM, so that an RPM
+ * already extracted by a previous build, or another module, need not be extracted again. Each tree is extracted into a
+ * temporary directory and renamed into place once complete, so that neither a failed extraction nor a concurrent build
+ * extracting the same RPM can leave a partial tree in the cache. The cached trees are shared: a tree materialized by
+ * linking must not be modified in place.
+ */
+final class ExtractionCache {
+
+    /**
+     * Extracts an RPM into a directory.
+     */
+    @FunctionalInterface
+    interface Extraction {
+        void extract(Path directory) throws IOException, MojoExecutionException;
+    }
+
+    /**
+     * The outcome of materializing a cached tree.
+     *
+     * @param cached whether the tree was already in the cache
+     * @param linked the number of files hardlinked
+     * @param copied the number of files copied
+     */
+    record Result(boolean cached, long linked, long copied) {
+    }
+
+    /**
+     * The file marking a directory as a sysroot created by the plugin, which may be deleted by the next build.
+     */
+    static final String SYSROOT_MARKER = ".rpm-builder-sysroot";
+
+    private final Log log;
+
+    private final Path directory;
+
+    /**
+     * @param log the logger
+     * @param directory the directory holding the cached trees
+     */
+    ExtractionCache(Log log, Path directory) {
+        this.log = log;
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Materializes the extracted payload of the RPM into the root, extracting it into the cache first if necessary.
+     *
+     * @param rpm the RPM
+     * @param extraction extracts the RPM into a directory
+     * @param root the directory to materialize the payload into
+     * @param link whether to hardlink the files into the root, where the filesystem allows, rather than copy them
+     * @return the outcome
+     * @throws IOException if the RPM cannot be read or the tree cannot be materialized
+     * @throws MojoExecutionException if the extraction fails
+     */
+    Result install(Path rpm, Extraction extraction, Path root, boolean link)
+            throws IOException, MojoExecutionException {
+        String checksum = Checksums.compute(rpm, List.of(Checksums.SHA256)).get(Checksums.SHA256);
+        Path tree = directory.resolve(checksum);
+        boolean cached = Files.isDirectory(tree);
+        if (!cached) {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempDirectory(directory, ".extract-");
+            try {
+                extraction.extract(temporary);
+                Files.move(temporary, tree, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("Cached the payload of " + rpm + " in " + tree);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                log.debug("The payload of " + rpm + " was cached concurrently in " + tree);
+            } finally {
+                delete(temporary);
+            }
+        }
+        AtomicLong linked = new AtomicLong();
+        AtomicLong copied = new AtomicLong();
+        Files.walkFileTree(tree, new SimpleFileVisitor<>() {
+            // Once a link fails, typically because the root is on another filesystem, so will the rest.
+            private boolean canLink = link;
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(root.resolve(tree.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                // The mode is applied once the directory is populated, as it may be read only. As with cpio when not
+                // running as root, failing to change the mode of an existing directory is ignored.
+                Path target = root.resolve(tree.relativize(dir).toString());
+                try {
+                    Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(dir));
+                } catch (IOException | UnsupportedOperationException ex) {
+                    log.debug("Unable to set the mode of " + target + ": " + ex);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path target = root.resolve(tree.relativize(file).toString());
+                if (attrs.isSymbolicLink()) {
+                    replace(target, () -> Files.createSymbolicLink(target, Files.readSymbolicLink(file)));
+                    return FileVisitResult.CONTINUE;
+                }
+                if (canLink) {
+                    try {
+                        replace(target, () -> Files.createLink(target, file));
+                        linked.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        log.debug("Unable to link " + file + " into " + root + ", copying instead: " + e);
+                        canLink = false;
+                    }
+                }
+                Files.copy(
+                        file,
+                        target,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.COPY_ATTRIBUTES,
+                        LinkOption.NOFOLLOW_LINKS);
+                copied.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new Result(cached, linked.get(), copied.get());
+    }
+
+    @FunctionalInterface
+    private interface Create {
+        void create() throws IOException;
+    }
+
+    /**
+     * Replaces the target; if another extraction creates it concurrently the last writer wins, as it would with cpio.
+     */
+    private static void replace(Path target, Create create) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            create.create();
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(target);
+            create.create();
+        }
+    }
+
+    /**
+     * Deletes and recreates the sysroot, marking it as one so that the next build may delete it in turn. So that a
+     * misconfigured sysroot cannot delete anything else, an existing directory is only deleted if it is empty or
+     * marked.
+     *
+     * @param sysroot the sysroot
+     * @throws IOException if it cannot be recreated
+     * @throws MojoExecutionException if it exists but is neither empty nor marked as a sysroot
+     */
+    static void recreateSysroot(Path sysroot) throws IOException, MojoExecutionException {
+        if (Files.exists(sysroot, LinkOption.NOFOLLOW_LINKS)
+                && !Files.isRegularFile(sysroot.resolve(SYSROOT_MARKER), LinkOption.NOFOLLOW_LINKS)
+                && !isEmptyDirectory(sysroot)) {
+            throw new MojoExecutionException(
+                    "Refusing to delete sysrootDirectory " + sysroot + " as it is not an empty directory and was not "
+                            + "created as a sysroot (it has no " + SYSROOT_MARKER + ")");
+        }
+        delete(sysroot);
+        Files.createDirectories(sysroot);
+        Files.createFile(sysroot.resolve(SYSROOT_MARKER));
+    }
+
+    private static boolean isEmptyDirectory(Path path) throws IOException {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try (Stream<Path> children = Files.list(path)) {
+            return children.findAny().isEmpty();
+        }
+    }
+
+    /**
+     * Deletes the directory and everything within it, first making each directory writable as an extracted payload
+     * may contain read only directories.
+     *
+     * @param directory the directory to delete
+     * @throws IOException if it cannot be deleted
+     */
+    static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                try {
+                    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir);
+                    if (permissions.add(PosixFilePermission.OWNER_WRITE)
+                            | permissions.add(PosixFilePermission.OWNER_EXECUTE)) {
+                        Files.setPosixFilePermissions(dir, permissions);
+                    }
+                } catch (IOException | UnsupportedOperationException e) {
+                    // The delete reports any directory that remains inaccessible.
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,150 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.eclipse.aether.RepositorySystemSession;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+
+/**
+ * Caches compiled groovy scripts by the hash of their content. The cache is held in the repository session so that
+ * modules within a reactor sharing a script (e.g. inherited from a parent POM) only compile it once. Optionally the
+ * compiled class bytes are also kept on disk so that subsequent builds need not compile it at all.
+ */
+final class GroovyScriptCache {
+
+    private static final String SESSION_KEY = GroovyScriptCache.class.getName();
+
+    private final Map<String, Class<? extends Script>> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cache for the session, creating it if necessary.
+     */
+    static GroovyScriptCache forSession(RepositorySystemSession session) {
+        return (GroovyScriptCache) session.getData().computeIfAbsent(SESSION_KEY, GroovyScriptCache::new);
+    }
+
+    /**
+     * Returns the compiled script class for the source, compiling it (or loading it from the disk cache) if needed.
+     *
+     * @param log the logger
+     * @param source the script source
+     * @param diskCache the directory compiled classes are kept in between builds, or null to disable
+     * @return the compiled script class
+     */
+    Class<? extends Script> get(Log log, String source, Path diskCache) {
+        // The Groovy version is part of the key as class files are not guaranteed to be compatible between versions.
+        String hash = new BuildFingerprint().put("groovy", GroovySystem.getVersion()).put("source", source).compute();
+        return scripts.computeIfAbsent(hash, h -> {
+            Map<String, byte[]> classes = diskCache == null ? null : read(log, diskCache.resolve(h));
+            if (classes == null) {
+                log.debug("Compiling groovy script " + h);
+                classes = compile("GroovyPatch_" + h, source);
+                if (diskCache != null) {
+                    write(log, diskCache.resolve(h), classes);
+                }
+            } else {
+                log.debug("Using cached groovy script " + h + " from " + diskCache);
+            }
+            return load("GroovyPatch_" + h, classes);
+        });
+    }
+
+    private static Map<String, byte[]> compile(String className, String source) {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        GroovyClassLoader classLoader = new GroovyClassLoader(GroovyScriptCache.class.getClassLoader(), configuration);
+        CompilationUnit unit = new CompilationUnit(configuration, null, classLoader);
+        unit.addSource(className + ".groovy", source);
+        unit.compile(Phases.CLASS_GENERATION);
+        Map<String, byte[]> classes = new HashMap<>();
+        for (GroovyClass groovyClass : unit.getClasses()) {
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        return classes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Script> load(String className, Map<String, byte[]> classes) {
+        ClassLoader classLoader = new ClassLoader(GroovyScriptCache.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        try {
+            return (Class<? extends Script>) classLoader.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Compiled groovy script does not contain " + className, e);
+        }
+    }
+
+    /**
+     * Reads the cached classes, returning null if they are absent or unreadable so that the script is recompiled.
+     */
+    private static Map<String, byte[]> read(Log log, Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        Map<String, byte[]> classes = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".class")).toList()) {
+                String name = file.getFileName().toString();
+                classes.put(name.substring(0, name.length() - ".class".length()), Files.readAllBytes(file));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read cached groovy script from " + directory + ": " + e);
+            return null;
+        }
+        return classes.isEmpty() ? null : classes;
+    }
+
+    /**
+     * Writes the classes into a temporary directory and then moves it into place so that concurrent builds never see
+     * a partially written entry. Failure to write is not fatal as the script has already been compiled.
+     */
+    private static void write(Log log, Path directory, Map<String, byte[]> classes) {
+        try {
+            Files.createDirectories(directory.getParent());
+            Path temporary = Files.createTempDirectory(directory.getParent(), ".tmp");
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                Files.write(temporary.resolve(entry.getKey() + ".class"), entry.getValue());
+            }
+            Files.writeString(
+                    temporary.resolve("groovy.version"),
+                    GroovySystem.getVersion(),
+                    StandardCharsets.UTF_8);
+            try {
+                Files.move(temporary, directory, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Another build cached it first.
+                try (Stream<Path> files = Files.list(temporary)) {
+                    for (Path file : files.toList()) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(temporary);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to cache groovy script in " + directory + ": " + e);
+        }
+    }
+}
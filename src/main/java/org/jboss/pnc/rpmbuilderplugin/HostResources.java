@@ -0,0 +1,187 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Determines the processors effectively available to the build. The JVM accounts for the CPU affinity of the process
+ * and, unless container support is disabled, for the CPU quota of its own control group; the quotas of the control
+ * group hierarchy are applied here as well, so that the limit of an enclosing group (e.g. a CI pod) is honoured too.
+ * Likewise the memory the process may use before reaching the limit of any of those groups is determined, as the host's
+ * available memory does not reflect it.
+ */
+final class HostResources {
+
+    private static final Path PROC_CGROUP = Path.of("/proc/self/cgroup");
+
+    private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+
+    private HostResources() {
+    }
+
+    /**
+     * Returns the number of processors available to the build, being the lesser of those reported by the JVM and the
+     * CPU quota, rounded up, of any control group containing the process.
+     *
+     * @param log the logger
+     * @return the number of processors, at least one
+     */
+    static int availableProcessors(Log log) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        OptionalDouble quota = readCPUQuota(log);
+        if (quota.isPresent() && Math.ceil(quota.getAsDouble()) < processors) {
+            log.debug(
+                    "Limiting processors from " + processors + " to the control group quota of "
+                            + quota.getAsDouble());
+            processors = (int) Math.ceil(quota.getAsDouble());
+        }
+        return Math.max(1, processors);
+    }
+
+    /**
+     * Returns the memory, in bytes, that the control groups containing the process allow it to use before reaching the
+     * lowest of their limits, if any group is limited.
+     *
+     * @param log the logger
+     * @return the memory remaining within the control group limits
+     */
+    static OptionalLong availableMemory(Log log) {
+        try {
+            double lowest = readLowest(
+                    "memory",
+                    (group, unified) -> unified
+                            ? readHeadroom(group.resolve("memory.max"), group.resolve("memory.current"))
+                            : readHeadroom(
+                                    group.resolve("memory.limit_in_bytes"),
+                                    group.resolve("memory.usage_in_bytes")));
+            return lowest == Double.MAX_VALUE ? OptionalLong.empty() : OptionalLong.of((long) lowest);
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Unable to read the control group memory limit: " + e);
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Reads the lowest CPU quota, in processors, of the control groups containing the process, from either the
+     * unified (v2) or the legacy (v1) <code>cpu</code> hierarchy.
+     */
+    private static OptionalDouble readCPUQuota(Log log) {
+        try {
+            double lowest = readLowest(
+                    "cpu",
+                    (group, unified) -> unified ? readUnifiedQuota(group.resolve("cpu.max"))
+                            : readLegacyQuota(group.resolve("cpu.cfs_quota_us"), group.resolve("cpu.cfs_period_us")));
+            return lowest == Double.MAX_VALUE ? OptionalDouble.empty() : OptionalDouble.of(lowest);
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Unable to read the control group CPU quota: " + e);
+            return OptionalDouble.empty();
+        }
+    }
+
+    /**
+     * Reads a value of each control group containing the process, within either the unified (v2) hierarchy or the
+     * legacy (v1) hierarchy of the controller, returning the lowest or {@link Double#MAX_VALUE} if none is limited.
+     */
+    private static double readLowest(String controller, GroupReader reader) throws IOException {
+        if (!Files.isReadable(PROC_CGROUP)) {
+            return Double.MAX_VALUE;
+        }
+        double lowest = Double.MAX_VALUE;
+        for (String line : Files.readAllLines(PROC_CGROUP, StandardCharsets.US_ASCII)) {
+            // Each line is hierarchy-id:controllers:path; the unified hierarchy has id 0 and no controllers.
+            String[] fields = line.split(":", 3);
+            if (fields.length != 3) {
+                continue;
+            }
+            if (fields[0].equals("0") && fields[1].isEmpty()) {
+                // On hosts with both hierarchies the unified one is mounted beneath the legacy ones.
+                Path mount = Files.isDirectory(CGROUP_ROOT.resolve("unified")) ? CGROUP_ROOT.resolve("unified")
+                        : CGROUP_ROOT;
+                for (Path group : groups(mount, fields[2])) {
+                    lowest = Math.min(lowest, reader.read(group, true));
+                }
+            } else if (List.of(fields[1].split(",")).contains(controller)) {
+                Path mount = Files.isDirectory(CGROUP_ROOT.resolve(controller)) ? CGROUP_ROOT.resolve(controller)
+                        : CGROUP_ROOT.resolve(fields[1]);
+                for (Path group : groups(mount, fields[2])) {
+                    lowest = Math.min(lowest, reader.read(group, false));
+                }
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Returns the directory of the control group and each of its ancestors within the mount. Within a container the
+     * path may be that of the host, in which case only the mount itself, being the container's group, is returned.
+     */
+    private static List<Path> groups(Path mount, String path) {
+        Path group = mount.resolve(path.replaceFirst("^/+", "")).normalize();
+        if (!group.startsWith(mount) || !Files.isDirectory(group)) {
+            return List.of(mount);
+        }
+        List<Path> groups = new ArrayList<>();
+        for (Path current = group; current != null && current.startsWith(mount); current = current.getParent()) {
+            groups.add(current);
+        }
+        return groups;
+    }
+
+    /**
+     * Reads <code>cpu.max</code>, being the quota and period or <code>max</code> if unlimited.
+     */
+    private static double readUnifiedQuota(Path file) throws IOException {
+        if (!Files.isReadable(file)) {
+            return Double.MAX_VALUE;
+        }
+        String[] fields = Files.readString(file, StandardCharsets.US_ASCII).trim().split("\\s+");
+        if (fields.length != 2 || fields[0].equals("max")) {
+            return Double.MAX_VALUE;
+        }
+        return Double.parseDouble(fields[0]) / Double.parseDouble(fields[1]);
+    }
+
+    /**
+     * Reads <code>cpu.cfs_quota_us</code>, being -1 if unlimited, and <code>cpu.cfs_period_us</code>.
+     */
+    private static double readLegacyQuota(Path quotaFile, Path periodFile) throws IOException {
+        if (!Files.isReadable(quotaFile) || !Files.isReadable(periodFile)) {
+            return Double.MAX_VALUE;
+        }
+        long quota = Long.parseLong(Files.readString(quotaFile, StandardCharsets.US_ASCII).trim());
+        long period = Long.parseLong(Files.readString(periodFile, StandardCharsets.US_ASCII).trim());
+        if (quota <= 0 || period <= 0) {
+            return Double.MAX_VALUE;
+        }
+        return (double) quota / period;
+    }
+
+    /**
+     * Reads the limit, being <code>max</code> if unlimited, and the usage of a control group's memory. The legacy
+     * hierarchy instead reports an unlimited group as the largest page-aligned long value.
+     */
+    private static double readHeadroom(Path limitFile, Path usageFile) throws IOException {
+        if (!Files.isReadable(limitFile) || !Files.isReadable(usageFile)) {
+            return Double.MAX_VALUE;
+        }
+        String limit = Files.readString(limitFile, StandardCharsets.US_ASCII).trim();
+        if (limit.equals("max") || Long.parseLong(limit) > Long.MAX_VALUE / 2) {
+            return Double.MAX_VALUE;
+        }
+        long usage = Long.parseLong(Files.readString(usageFile, StandardCharsets.US_ASCII).trim());
+        return Math.max(0, Long.parseLong(limit) - usage);
+    }
+
+    @FunctionalInterface
+    private interface GroupReader {
+        double read(Path group, boolean unified) throws IOException;
+    }
+}
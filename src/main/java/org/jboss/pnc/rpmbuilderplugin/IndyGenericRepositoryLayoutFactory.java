@@ -25,7 +25,9 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -47,10 +49,28 @@ import org.eclipse.aether.util.ConfigUtils;
 /**
  * This is a direct copy of org.eclipse.aether.internal.impl.Maven2RepositoryLayoutFactory with small modifications to
  * make it suitable for deploying RPMs to a specified repository under their original name. It uses a content type of
- * {@code "default"}.
+ * {@code "rpm"} so that it may be registered alongside the other layouts without affecting any other repository.
+ * Artifacts marked as having provided (precomputed) checksums for every configured algorithm have no checksum locations
+ * on upload; the caller deploys those checksums itself so that the artifact is not read again to hash it.
  */
 public final class IndyGenericRepositoryLayoutFactory implements RepositoryLayoutFactory {
 
+    /**
+     * An artifact property giving its location relative to the version directory, for artifacts not deployed directly
+     * within it under their own file name.
+     */
+    static final String LOCATION_PROPERTY = "rpm.location";
+
+    /**
+     * An artifact property which, if <code>true</code>, marks its checksums as deployed separately by the caller.
+     */
+    static final String CHECKSUMS_PROVIDED_PROPERTY = "rpm.checksumsProvided";
+
+    /**
+     * The content type of repositories using this layout.
+     */
+    static final String CONTENT_TYPE = "rpm";
+
     private static final String DEFAULT_CHECKSUMS_ALGORITHMS = "SHA-1,MD5";
 
     private static final String DEFAULT_OMIT_CHECKSUMS_FOR_EXTENSIONS = ".asc,.sigstore";
@@ -76,15 +96,15 @@ public final class IndyGenericRepositoryLayoutFactory implements RepositoryLayou
         this.checksumAlgorithmFactorySelector = requireNonNull(checksumAlgorithmFactorySelector);
     }
 
-    public RepositoryLayout newInstance(RepositorySystemSession session, RemoteRepository repository)
-            throws NoRepositoryLayoutException {
-        requireNonNull(session, "session cannot be null");
-        requireNonNull(repository, "repository cannot be null");
-        if (!"default".equals(repository.getContentType())) {
-            throw new NoRepositoryLayoutException(repository);
-        }
-
-        List<ChecksumAlgorithmFactory> checksumsAlgorithms = checksumAlgorithmFactorySelector.selectList(
+    /**
+     * The checksum algorithms configured for the repository; {@code SHA-1} and {@code MD5} unless overridden via
+     * {@link Maven2RepositoryLayoutFactory#CONFIG_PROP_CHECKSUMS_ALGORITHMS}.
+     */
+    static List<ChecksumAlgorithmFactory> selectChecksumAlgorithms(
+            ChecksumAlgorithmFactorySelector checksumAlgorithmFactorySelector,
+            RepositorySystemSession session,
+            RemoteRepository repository) {
+        return checksumAlgorithmFactorySelector.selectList(
                 ConfigUtils.parseCommaSeparatedUniqueNames(
                         ConfigUtils.getString(
                                 session,
@@ -92,6 +112,36 @@ public final class IndyGenericRepositoryLayoutFactory implements RepositoryLayou
                                 Maven2RepositoryLayoutFactory.CONFIG_PROP_CHECKSUMS_ALGORITHMS + "."
                                         + repository.getId(),
                                 Maven2RepositoryLayoutFactory.CONFIG_PROP_CHECKSUMS_ALGORITHMS)));
+    }
+
+    /**
+     * Whether the provided checksums cover every algorithm.
+     */
+    static boolean isProvided(Map<String, String> checksums, List<ChecksumAlgorithmFactory> algorithms) {
+        return checksums != null && algorithms.stream().allMatch(a -> checksums.containsKey(a.getName()));
+    }
+
+    /**
+     * Marks the artifact as having its checksums deployed separately by the caller.
+     */
+    static Artifact withProvidedChecksums(Artifact artifact) {
+        Map<String, String> properties = new HashMap<>(artifact.getProperties());
+        properties.put(CHECKSUMS_PROVIDED_PROPERTY, Boolean.TRUE.toString());
+        return artifact.setProperties(properties);
+    }
+
+    public RepositoryLayout newInstance(RepositorySystemSession session, RemoteRepository repository)
+            throws NoRepositoryLayoutException {
+        requireNonNull(session, "session cannot be null");
+        requireNonNull(repository, "repository cannot be null");
+        if (!CONTENT_TYPE.equals(repository.getContentType())) {
+            throw new NoRepositoryLayoutException(repository);
+        }
+
+        List<ChecksumAlgorithmFactory> checksumsAlgorithms = selectChecksumAlgorithms(
+                checksumAlgorithmFactorySelector,
+                session,
+                repository);
 
         // ensure uniqueness of (potentially user set) extension list
         Set<String> omitChecksumsForExtensions = Arrays.stream(
@@ -169,7 +219,7 @@ public final class IndyGenericRepositoryLayoutFactory implements RepositoryLayou
             path.append(artifact.getBaseVersion()).append('/');
 
             // Modifications here for RPM deployment
-            path.append(artifact.getFile().getName());
+            path.append(artifact.getProperty(LOCATION_PROPERTY, artifact.getFile().getName()));
 
             return toUri(path.toString());
         }
@@ -200,6 +250,10 @@ public final class IndyGenericRepositoryLayoutFactory implements RepositoryLayou
             if (!hasChecksums(artifact) || isChecksum(artifact.getExtension())) {
                 return Collections.emptyList();
             }
+            // Modifications here for RPM deployment; provided checksums are uploaded separately by the caller.
+            if (upload && Boolean.parseBoolean(artifact.getProperty(CHECKSUMS_PROVIDED_PROPERTY, "false"))) {
+                return Collections.emptyList();
+            }
             return getChecksumLocations(location);
         }
 
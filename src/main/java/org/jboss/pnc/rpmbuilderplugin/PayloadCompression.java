@@ -0,0 +1,100 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The compression of the payload of the built RPMs, passed to rpmbuild as the <code>_binary_payload</code> and
+ * <code>_source_payload</code> macros in the form <code>w&lt;level&gt;T&lt;threads&gt;.&lt;io&gt;</code>. Only the xz
+ * and zstd codecs compress using several threads.
+ *
+ * @param codec the codec
+ * @param level the compression level, or null for the default of the codec
+ */
+record PayloadCompression(Codec codec, Integer level) {
+
+    enum Codec {
+        GZIP("gzdio", false),
+        BZIP2("bzdio", false),
+        XZ("xzdio", true),
+        LZMA("lzdio", false),
+        ZSTD("zstdio", true),
+        NONE("ufdio", false);
+
+        private final String io;
+
+        private final boolean threaded;
+
+        Codec(String io, boolean threaded) {
+            this.io = io;
+            this.threaded = threaded;
+        }
+
+        static Codec fromString(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Unknown payloadCompression " + value + "; expected gzip, bzip2, xz, lzma, zstd or none");
+            }
+        }
+    }
+
+    /**
+     * The named presets: <code>fast-ci</code> favouring the speed of compression and <code>release-size</code>
+     * favouring the size of the RPMs.
+     */
+    static final Map<String, PayloadCompression> PROFILES = Map.of(
+            "fast-ci",
+            new PayloadCompression(Codec.ZSTD, 3),
+            "release-size",
+            new PayloadCompression(Codec.XZ, 9));
+
+    /**
+     * Resolves the configured compression, where an explicit codec or level overrides that of the profile.
+     *
+     * @param profile the name of a preset, or null
+     * @param codec the codec, or null
+     * @param level the level, or null
+     * @return the compression, or null if none is configured and the defaults of rpmbuild apply
+     * @throws IllegalArgumentException if the profile or codec is unknown
+     */
+    static PayloadCompression resolve(String profile, String codec, Integer level) {
+        PayloadCompression compression = null;
+        if (!isEmpty(profile)) {
+            compression = PROFILES.get(profile);
+            if (compression == null) {
+                throw new IllegalArgumentException(
+                        "Unknown payloadProfile " + profile + "; expected one of " + new TreeSet<>(PROFILES.keySet()));
+            }
+        }
+        if (!isEmpty(codec)) {
+            compression = new PayloadCompression(Codec.fromString(codec), level);
+        } else if (level != null) {
+            if (compression == null) {
+                throw new IllegalArgumentException("payloadCompressionLevel requires payloadCompression or a profile");
+            }
+            compression = new PayloadCompression(compression.codec(), level);
+        }
+        return compression;
+    }
+
+    /**
+     * Returns the value of the payload macros.
+     *
+     * @param threads the number of threads to compress with, where the codec supports it
+     */
+    String toMacro(int threads) {
+        StringBuilder macro = new StringBuilder("w");
+        if (level != null && codec != Codec.NONE) {
+            macro.append(level);
+        }
+        if (codec.threaded && threads > 1) {
+            macro.append('T').append(threads);
+        }
+        return macro.append('.').append(codec.io).toString();
+    }
+}
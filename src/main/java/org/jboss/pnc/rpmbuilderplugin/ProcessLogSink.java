@@ -0,0 +1,234 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Receives the output of a process, such as rpmbuild, without passing every line through the Maven logger. Lines are
+ * queued and drained on a dedicated thread into a log file, so that a slow console never stalls the process. The
+ * console instead receives a rate-limited summary of progress (the current rpmbuild section and the number of lines
+ * and files processed) along with any errors and warnings. The last lines are retained so that they can be shown if
+ * the process fails.
+ */
+final class ProcessLogSink implements AutoCloseable {
+
+    private static final Pattern SECTION = Pattern.compile("^Executing\\((%\\w+)\\).*");
+
+    /**
+     * Queued once every line has been, to stop the drain.
+     */
+    private static final Optional<String> END = Optional.empty();
+
+    private final Log log;
+
+    private final String name;
+
+    private final boolean quiet;
+
+    private final Path file;
+
+    private final Predicate<String> countsFile;
+
+    private final int tailSize;
+
+    private final long summaryInterval;
+
+    private final BlockingQueue<Optional<String>> queue = new ArrayBlockingQueue<>(16384);
+
+    private final ArrayDeque<String> tail = new ArrayDeque<>();
+
+    private final Thread drain;
+
+    private BufferedWriter writer;
+
+    private String section = "starting";
+
+    private long lines;
+
+    private long files;
+
+    private long lastSummary = System.nanoTime();
+
+    private volatile long lastOutput = System.nanoTime();
+
+    private boolean closed;
+
+    /**
+     * @param log the logger that summaries are written to
+     * @param name the name of the process, used in each summary
+     * @param quiet whether the summaries are logged at debug rather than info level
+     * @param file the log file, which is replaced
+     * @param countsFile whether a line denotes a processed file
+     * @param tailSize the number of lines retained to show on failure
+     * @param summaryInterval the minimum interval between summaries in milliseconds
+     */
+    ProcessLogSink(
+            Log log,
+            String name,
+            boolean quiet,
+            Path file,
+            Predicate<String> countsFile,
+            int tailSize,
+            long summaryInterval) {
+        this.log = log;
+        this.name = name;
+        this.quiet = quiet;
+        this.file = file;
+        this.countsFile = countsFile;
+        this.tailSize = Math.max(0, tailSize);
+        this.summaryInterval = TimeUnit.MILLISECONDS.toNanos(summaryInterval);
+        try {
+            Files.createDirectories(file.getParent());
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("Unable to write " + name + " output to " + file + ": " + e);
+        }
+        drain = new Thread(this::drain, "rpm-builder-log-" + name);
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    /**
+     * Queues a line of output, blocking only if the drain has fallen a long way behind.
+     */
+    void accept(String line) {
+        lastOutput = System.nanoTime();
+        enqueue(Optional.of(line));
+    }
+
+    private void enqueue(Optional<String> item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            // Rather than losing the line it is queued if there is room, or else logged directly.
+            if (!queue.offer(item)) {
+                item.ifPresent(line -> log.warn(name + ": " + line));
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the last line was received, or the sink created if none has been.
+     */
+    long getLastOutput() {
+        return lastOutput;
+    }
+
+    private void drain() {
+        try {
+            Optional<String> line;
+            while ((line = queue.take()).isPresent()) {
+                process(line.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(String line) {
+        lines++;
+        if (writer != null) {
+            try {
+                writer.write(line);
+                writer.write('\n');
+            } catch (IOException e) {
+                log.warn("Unable to write " + name + " output to " + file + ": " + e);
+                closeWriter();
+            }
+        }
+        if (tailSize > 0) {
+            if (tail.size() == tailSize) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+        }
+        if (countsFile.test(line)) {
+            files++;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(line);
+        } else if (line.startsWith("error:") || line.startsWith("RPM build errors:")) {
+            log.error(name + ": " + line);
+        } else if (line.startsWith("warning:")) {
+            log.warn(name + ": " + line);
+        } else if (line.startsWith("Wrote: ")) {
+            log.info(name + ": " + line);
+        }
+
+        Matcher matcher = SECTION.matcher(line);
+        if (matcher.matches()) {
+            section = matcher.group(1);
+            summarise();
+        } else if (System.nanoTime() - lastSummary >= summaryInterval) {
+            summarise();
+        }
+    }
+
+    private void summarise() {
+        lastSummary = System.nanoTime();
+        summarise(name + ": " + section + " (" + lines + " lines, " + files + " files)");
+    }
+
+    private void summarise(String message) {
+        if (quiet) {
+            log.debug(message);
+        } else {
+            log.info(message);
+        }
+    }
+
+    private void closeWriter() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.debug("Unable to close " + file + ": " + e);
+        }
+        writer = null;
+    }
+
+    /**
+     * Waits for every queued line to be written and closes the log file.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        enqueue(END);
+        try {
+            drain.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer != null) {
+            closeWriter();
+        }
+        summarise(name + ": completed (" + lines + " lines, " + files + " files); output written to " + file);
+    }
+
+    /**
+     * Logs the last lines of output as errors. This should be called once the sink is closed.
+     */
+    void logTail() {
+        if (!tail.isEmpty()) {
+            log.error("Last " + tail.size() + " lines of " + name + " output (see " + file + " for all output):");
+            tail.forEach(line -> log.error("  " + line));
+        }
+    }
+}
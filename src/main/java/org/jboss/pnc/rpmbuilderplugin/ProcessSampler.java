@@ -0,0 +1,400 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import groovy.json.JsonOutput;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Samples the resource usage of a process, such as rpmbuild, and of every process it starts. While the process runs
+ * <code>/proc/&lt;pid&gt;</code> is polled for each process in its tree, recording the peak resident set size, the CPU
+ * time, the bytes read and written and the wall time over which it was seen. Processes that start and exit between two
+ * samples are not seen individually, although their CPU time is included in that of the tree once reaped. Once closed
+ * the usage is summarised in the log and written to a JSON report. Where <code>/proc</code> is unavailable nothing is
+ * sampled.
+ * <p>
+ * The sampler also acts as a watchdog: if the process runs for longer than the timeout, produces no output for longer
+ * than the idle timeout or the build is cancelled, the tree is terminated, and killed should it not exit within a grace
+ * period.
+ */
+final class ProcessSampler implements AutoCloseable {
+
+    private static final Path PROC = Path.of("/proc");
+
+    /**
+     * The unit of the CPU times in <code>/proc/&lt;pid&gt;/stat</code>, <code>USER_HZ</code>, which is 100 on every
+     * supported architecture.
+     */
+    private static final long CLOCK_TICKS = 100;
+
+    private static final long KILL_GRACE = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The usage of one process, updated by each sample in which it is seen.
+     */
+    private static final class Usage {
+        private final long pid;
+
+        private final long parent;
+
+        private final String command;
+
+        private final boolean root;
+
+        private final long firstSeen;
+
+        private long lastSeen;
+
+        private long peakRss;
+
+        private long cpuTicks;
+
+        private long childCpuTicks;
+
+        private long readBytes;
+
+        private long writeBytes;
+
+        private Usage(long pid, long parent, String command, boolean root, long now) {
+            this.pid = pid;
+            this.parent = parent;
+            this.command = command;
+            this.root = root;
+            this.firstSeen = now;
+        }
+
+        private Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("pid", pid);
+            json.put("parent", parent);
+            json.put("command", command);
+            json.put("wallMillis", TimeUnit.NANOSECONDS.toMillis(lastSeen - firstSeen));
+            json.put("cpuMillis", cpuTicks * 1000 / CLOCK_TICKS);
+            json.put("peakRssBytes", peakRss);
+            json.put("readBytes", readBytes);
+            json.put("writeBytes", writeBytes);
+            return json;
+        }
+    }
+
+    private final Log log;
+
+    private final String name;
+
+    private final boolean quiet;
+
+    private final Path report;
+
+    private final long interval;
+
+    private final long timeout;
+
+    private final long idleTimeout;
+
+    private final LongSupplier lastOutput;
+
+    private final BooleanSupplier cancelled;
+
+    private final boolean sampling = Files.isDirectory(PROC.resolve("self"));
+
+    private final List<ProcessHandle> roots = new ArrayList<>();
+
+    // Updated only by the sampling thread, and read once it has stopped.
+    private final Map<Long, Usage> usage = new HashMap<>();
+
+    private final long start = System.nanoTime();
+
+    private final Thread thread;
+
+    private long peakTreeRss;
+
+    private volatile String killReason;
+
+    private long killed;
+
+    private volatile boolean closed;
+
+    /**
+     * @param log the logger
+     * @param name the name of the process, used in the summary and any watchdog message
+     * @param quiet whether the summary is logged at debug rather than info level
+     * @param report the JSON report, which is replaced
+     * @param interval the interval between samples in milliseconds
+     * @param timeout the time, in seconds, after which the process is terminated, or zero for no limit
+     * @param idleTimeout the time, in seconds, without output after which the process is terminated, or zero for no
+     *        limit
+     * @param lastOutput returns the {@link System#nanoTime()} at which the process last produced output
+     * @param cancelled returns whether the build has been cancelled
+     */
+    ProcessSampler(
+            Log log,
+            String name,
+            boolean quiet,
+            Path report,
+            long interval,
+            long timeout,
+            long idleTimeout,
+            LongSupplier lastOutput,
+            BooleanSupplier cancelled) {
+        this.log = log;
+        this.name = name;
+        this.quiet = quiet;
+        this.report = report;
+        this.interval = Math.max(10, interval);
+        this.timeout = TimeUnit.SECONDS.toNanos(Math.max(0, timeout));
+        this.idleTimeout = TimeUnit.SECONDS.toNanos(Math.max(0, idleTimeout));
+        this.lastOutput = lastOutput;
+        this.cancelled = cancelled;
+        thread = new Thread(this::run, "rpm-builder-sampler-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds a process to be sampled and watched, along with every process it starts. This is passed to
+     * <code>whileRunning</code> of each process in a pipeline.
+     */
+    void attach(ProcessHandle process) {
+        synchronized (roots) {
+            roots.add(process);
+        }
+    }
+
+    private void summarise(String message) {
+        if (quiet) {
+            log.debug(message);
+        } else {
+            log.info(message);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            List<ProcessHandle> processes;
+            synchronized (roots) {
+                processes = List.copyOf(roots);
+            }
+            if (sampling) {
+                sample(processes);
+            }
+            watch(processes);
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // Closed.
+            }
+        }
+    }
+
+    private void sample(List<ProcessHandle> processes) {
+        long now = System.nanoTime();
+        long treeRss = 0;
+        for (ProcessHandle process : processes.stream()
+                .flatMap(p -> Stream.concat(Stream.of(p), p.descendants()))
+                .distinct()
+                .toList()) {
+            try {
+                treeRss += sample(process.pid(), processes.contains(process), now);
+            } catch (IOException | RuntimeException e) {
+                // The process exited while being read.
+            }
+        }
+        peakTreeRss = Math.max(peakTreeRss, treeRss);
+    }
+
+    /**
+     * Samples a process, returning its current resident set size.
+     */
+    private long sample(long pid, boolean root, long now) throws IOException {
+        Path directory = PROC.resolve(Long.toString(pid));
+        String stat = Files.readString(directory.resolve("stat"), StandardCharsets.US_ASCII);
+        // The command, in parentheses, may itself contain spaces and parentheses.
+        int end = stat.lastIndexOf(')');
+        String command = stat.substring(stat.indexOf('(') + 1, end);
+        String[] fields = stat.substring(end + 2).trim().split(" ");
+        // Fields from the state (the third field of the file) onward.
+        long parent = Long.parseLong(fields[1]);
+        long cpu = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        long children = Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+
+        long rss = 0;
+        long peakRss = 0;
+        for (String line : Files.readAllLines(directory.resolve("status"), StandardCharsets.US_ASCII)) {
+            if (line.startsWith("VmRSS:")) {
+                rss = kilobytes(line);
+            } else if (line.startsWith("VmHWM:")) {
+                peakRss = kilobytes(line);
+            }
+        }
+        long readBytes = -1;
+        long writeBytes = -1;
+        Path io = directory.resolve("io");
+        if (Files.isReadable(io)) {
+            try {
+                for (String line : Files.readAllLines(io, StandardCharsets.US_ASCII)) {
+                    if (line.startsWith("read_bytes:")) {
+                        readBytes = Long.parseLong(line.substring(11).trim());
+                    } else if (line.startsWith("write_bytes:")) {
+                        writeBytes = Long.parseLong(line.substring(12).trim());
+                    }
+                }
+            } catch (IOException e) {
+                // Restricted, such as for a setuid process.
+            }
+        }
+
+        Usage process = usage.computeIfAbsent(pid, p -> new Usage(p, parent, command, root, now));
+        process.lastSeen = now;
+        process.peakRss = Math.max(process.peakRss, Math.max(rss, peakRss));
+        process.cpuTicks = Math.max(process.cpuTicks, cpu);
+        if (root) {
+            process.childCpuTicks = Math.max(process.childCpuTicks, children);
+        }
+        process.readBytes = Math.max(process.readBytes, readBytes);
+        process.writeBytes = Math.max(process.writeBytes, writeBytes);
+        return rss;
+    }
+
+    private static long kilobytes(String line) {
+        String[] fields = line.trim().split("\\s+");
+        return Long.parseLong(fields[1]) * 1024;
+    }
+
+    private void watch(List<ProcessHandle> processes) {
+        long now = System.nanoTime();
+        if (killReason == null) {
+            if (cancelled.getAsBoolean()) {
+                kill(processes, "the build was cancelled");
+            } else if (timeout > 0 && now - start > timeout) {
+                kill(processes, "it ran for longer than " + TimeUnit.NANOSECONDS.toSeconds(timeout) + " seconds");
+            } else if (idleTimeout > 0 && now - lastOutput.getAsLong() > idleTimeout) {
+                kill(
+                        processes,
+                        "it produced no output for " + TimeUnit.NANOSECONDS.toSeconds(idleTimeout) + " seconds");
+            }
+        } else if (killed != 0 && now - killed > KILL_GRACE) {
+            log.error("Killing " + name + " as it did not exit once terminated");
+            processes.forEach(process -> {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+            });
+            killed = 0;
+        }
+    }
+
+    private void kill(List<ProcessHandle> processes, String reason) {
+        killReason = reason;
+        killed = System.nanoTime();
+        log.warn("Terminating " + name + " as " + reason);
+        processes.forEach(process -> {
+            process.descendants().forEach(ProcessHandle::destroy);
+            process.destroy();
+        });
+    }
+
+    /**
+     * Returns why the watchdog terminated the process, or null if it did not.
+     */
+    String getKillReason() {
+        return killReason;
+    }
+
+    /**
+     * Stops sampling, then logs the summary and writes the report.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!sampling || usage.isEmpty()) {
+            return;
+        }
+
+        long wall = System.nanoTime() - start;
+        List<Usage> processes = new ArrayList<>(usage.values());
+        processes.sort(Comparator.comparingLong((Usage u) -> u.cpuTicks).reversed());
+        long rootTicks = 0;
+        long reapedTicks = 0;
+        long descendantTicks = 0;
+        long peakRss = 0;
+        long readBytes = 0;
+        long writeBytes = 0;
+        for (Usage process : processes) {
+            if (process.root) {
+                rootTicks += process.cpuTicks;
+                reapedTicks += process.childCpuTicks;
+            } else {
+                descendantTicks += process.cpuTicks;
+            }
+            peakRss = Math.max(peakRss, process.peakRss);
+            readBytes += Math.max(0, process.readBytes);
+            writeBytes += Math.max(0, process.writeBytes);
+        }
+        // The reaped descendants are accounted to their root, including those seen while running and those never seen.
+        long cpuTicks = rootTicks + Math.max(reapedTicks, descendantTicks);
+        summarise(
+                String.format(
+                        "%s: %d processes sampled; %.1fs CPU over %.1fs; peak RSS %d MiB (%d MiB for the tree);"
+                                + " %d MiB read, %d MiB written",
+                        name,
+                        processes.size(),
+                        cpuTicks / (double) CLOCK_TICKS,
+                        wall / 1e9,
+                        peakRss >> 20,
+                        peakTreeRss >> 20,
+                        readBytes >> 20,
+                        writeBytes >> 20));
+        processes.stream()
+                .limit(3)
+                .forEach(
+                        process -> summarise(
+                                String.format(
+                                        "%s:   %s (pid %d) %.1fs CPU, peak RSS %d MiB",
+                                        name,
+                                        process.command,
+                                        process.pid,
+                                        process.cpuTicks / (double) CLOCK_TICKS,
+                                        process.peakRss >> 20)));
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("name", name);
+        json.put("wallMillis", TimeUnit.NANOSECONDS.toMillis(wall));
+        json.put("cpuMillis", cpuTicks * 1000 / CLOCK_TICKS);
+        json.put("peakRssBytes", peakRss);
+        json.put("peakTreeRssBytes", peakTreeRss);
+        json.put("readBytes", readBytes);
+        json.put("writeBytes", writeBytes);
+        if (killReason != null) {
+            json.put("killed", killReason);
+        }
+        json.put("processes", processes.stream().map(Usage::toJson).toList());
+        try {
+            Files.createDirectories(report.getParent());
+            Files.writeString(report, JsonOutput.prettyPrint(JsonOutput.toJson(json)), StandardCharsets.UTF_8);
+            log.debug("Wrote the process usage of " + name + " to " + report);
+        } catch (IOException e) {
+            log.warn("Unable to write the process usage of " + name + " to " + report + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.Semaphore;
+
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.RepositorySystemSession;
+
+/**
+ * Limits the number of rpmbuild processes running at once across every module of a reactor, so that a parallel build
+ * (<code>mvn -T</code>) combined with concurrent spec builds within each module does not oversubscribe the build host.
+ * The governor is held in the repository session and so its limit is determined by the first module to build: either
+ * the configured limit or, if none, the lesser of the number of processors available to the build and the number of
+ * builds that fit within the available memory, being the lesser of the host's and that left within the limits of the
+ * control groups containing the process.
+ */
+final class RPMBuildGovernor {
+
+    private static final String SESSION_KEY = RPMBuildGovernor.class.getName();
+
+    private static final Path MEMINFO = Path.of("/proc/meminfo");
+
+    private final int limit;
+
+    private final Semaphore permits;
+
+    private RPMBuildGovernor(int limit) {
+        this.limit = limit;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    /**
+     * Returns the governor for the session, creating it if necessary.
+     *
+     * @param log the logger
+     * @param session the repository session
+     * @param maxConcurrentBuilds the configured limit, or zero to derive it from the host
+     * @param buildMemory the memory, in megabytes, needed by each rpmbuild when deriving the limit
+     * @return the governor
+     */
+    static RPMBuildGovernor forSession(
+            Log log,
+            RepositorySystemSession session,
+            int maxConcurrentBuilds,
+            long buildMemory) {
+        return (RPMBuildGovernor) session.getData().computeIfAbsent(SESSION_KEY, () -> {
+            int limit = maxConcurrentBuilds;
+            if (limit <= 0) {
+                int processors = HostResources.availableProcessors(log);
+                long available = readAvailableMemory(log);
+                OptionalLong limited = HostResources.availableMemory(log);
+                if (limited.isPresent() && (available <= 0 || limited.getAsLong() < available)) {
+                    log.debug(
+                            "Limiting available memory from " + available + " to the control group headroom of "
+                                    + limited.getAsLong() + " bytes");
+                    // A group already at its limit still admits a single build.
+                    available = Math.max(1, limited.getAsLong());
+                }
+                limit = processors;
+                if (available > 0 && buildMemory > 0) {
+                    limit = (int) Math.max(1, Math.min(processors, available / (buildMemory * 1024 * 1024)));
+                }
+                String memory = available > 0 ? available / (1024 * 1024) + " MB" : "unknown";
+                log.info(
+                        "Running at most " + limit + " concurrent rpmbuild processes (" + processors + " processors, "
+                                + memory + " available memory)");
+            } else {
+                log.info("Running at most " + limit + " concurrent rpmbuild processes");
+            }
+            return new RPMBuildGovernor(limit);
+        });
+    }
+
+    /**
+     * The number of rpmbuild processes allowed to run at once.
+     */
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Whether a process may start without waiting, in which case it holds a permit that must be released.
+     */
+    boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    /**
+     * Waits until a process may start; it then holds a permit that must be released.
+     */
+    void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    /**
+     * Reads <code>MemAvailable</code> from <code>/proc/meminfo</code>, returning zero where that is not available.
+     */
+    private static long readAvailableMemory(Log log) {
+        if (!Files.isReadable(MEMINFO)) {
+            return 0;
+        }
+        try {
+            List<String> lines = Files.readAllLines(MEMINFO, StandardCharsets.US_ASCII);
+            for (String line : lines) {
+                if (line.startsWith("MemAvailable:")) {
+                    String[] fields = line.substring("MemAvailable:".length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Unable to read available memory from " + MEMINFO + ": " + e);
+        }
+        return 0;
+    }
+}
@@ -5,34 +5,41 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
 
 import javax.inject.Inject;
 
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -41,40 +48,285 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProjectHelper;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.jboss.pnc.mavenmanipulator.common.Version;
 
-import groovy.lang.GroovyShell;
+import groovy.lang.Binding;
+import groovy.lang.Closure;
 import groovy.lang.Script;
 import io.smallrye.common.process.ProcessBuilder;
 
 /**
  * Run rpmbuild and package the results.
  */
-@Mojo(name = "package", defaultPhase = LifecyclePhase.PACKAGE)
+@Mojo(name = "package", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
 public class RPMBuilder extends BaseMojo {
 
+    /**
+     * The directories rpmbuild creates below its top directory, the working directory, while building.
+     */
+    private static final Set<String> RPMBUILD_DIRECTORIES = Set.of("BUILD", "BUILDROOT", "RPMS", "SRPMS");
+
     @Parameter(defaultValue = "${mojoExecution}")
     protected MojoExecution mojoExecution;
 
     @Inject
     private MavenProjectHelper projectHelper;
 
+    @Inject
+    private RepositorySystem repositorySystem;
+
     @Parameter(defaultValue = "${project.basedir}", property = "workingDirectory", required = true, readonly = true)
-    private File workingDirectory;
+    protected File workingDirectory;
 
     /**
-     * Custom groovy script to run against the spec file.
+     * Custom groovy script to run against the spec file. This is either the script itself or a reference to it, being
+     * <code>file:</code> followed by a path (relative to the project directory) or <code>classpath:</code> followed by
+     * the name of a resource on the plugin classpath (for example supplied by a plugin dependency).
      */
     @Parameter(property = "groovyPatch")
     private String groovyPatch;
 
+    /**
+     * Directory in which compiled groovy scripts are kept between builds, keyed by the hash of their content. If not
+     * set scripts are only cached for the duration of the build.
+     */
+    @Parameter(property = "groovyPatchCacheDirectory")
+    private File groovyPatchCacheDirectory;
+
+    /**
+     * Groovy scripts, inline or referenced as for <code>groovyPatch</code>, which transform the spec file as it is
+     * streamed through the spec pipeline. Each script is run once, with the same variables as <code>groovyPatch</code>,
+     * and must return a closure which is called with each line. The closure returns the replacement line, a list of
+     * lines, or null to remove the line. For example:
+     *
+     * <pre>
+     * {@code
+     * <specTransformers>
+     *    <specTransformer>{ line -> line.replace('@VERSION@', meadversion) }</specTransformer>
+     * </specTransformers>
+     * }</pre>
+     */
+    @Parameter(property = "specTransformers")
+    private List<String> specTransformers = new ArrayList<>();
+
+    /**
+     * Macros defined, via <code>%global</code>, at the top of the spec file. Unlike <code>macros</code>, which are only
+     * passed to rpmbuild, these are recorded within the spec file and so the source RPM.
+     */
+    @Parameter(property = "specDefines")
+    private Map<String, String> specDefines = new LinkedHashMap<>();
+
+    /**
+     * If set, replaces the value of the <code>Version</code> tag in the spec file.
+     */
+    @Parameter(property = "specVersion")
+    private String specVersion;
+
+    /**
+     * If set, replaces the value of the <code>Release</code> tag in the spec file.
+     */
+    @Parameter(property = "specRelease")
+    private String specRelease;
+
+    /**
+     * The encoding of the spec file, used when it is rewritten. Defaults to UTF-8 if not set.
+     */
+    @Parameter(defaultValue = "${project.build.sourceEncoding}", property = "encoding")
+    private String encoding;
+
+    /**
+     * The number of spec files built concurrently when the working directory contains several. Zero uses the number
+     * of available processors.
+     */
+    @Parameter(defaultValue = "0", property = "buildThreads")
+    private int buildThreads;
+
+    /**
+     * What rpmbuild builds. One of:
+     * <ul>
+     * <li><code>all</code> - the binary and source RPMs (<code>rpmbuild -ba</code>)</li>
+     * <li><code>binary</code> - only the binary RPMs (<code>rpmbuild -bb</code>)</li>
+     * <li><code>source</code> - only the source RPM (<code>rpmbuild -bs</code>)</li>
+     * <li><code>fast</code> - only the binary RPMs, skipping <code>%check</code>, debuginfo packages, build-id links
+     * and the <code>brp-*</code> post-processing, for development builds. The deploy goal refuses to deploy these.</li>
+     * </ul>
+     */
+    @Parameter(defaultValue = "all", property = "buildMode")
+    private String buildMode = "all";
+
+    /**
+     * The maximum number of rpmbuild processes run at once across every module of the reactor, so that a parallel
+     * build does not oversubscribe the host. Zero derives the limit from the number of available processors and the
+     * available memory. As the limit is shared, it is determined by the first module to build.
+     */
+    @Parameter(defaultValue = "0", property = "maxConcurrentBuilds")
+    private int maxConcurrentBuilds;
+
+    /**
+     * The memory, in megabytes, assumed to be needed by each rpmbuild when deriving <code>maxConcurrentBuilds</code>
+     * from the available memory.
+     */
+    @Parameter(defaultValue = "1024", property = "buildMemory")
+    private long buildMemory;
+
+    /**
+     * The number of jobs each rpmbuild runs, passed as the <code>_smp_build_ncpus</code> macro from which
+     * <code>%{_smp_mflags}</code> is derived. Zero leaves the macro, and so the number of jobs, to rpmbuild and the
+     * host.
+     */
+    @Parameter(defaultValue = "0", property = "buildJobs")
+    private int buildJobs;
+
+    /**
+     * A named preset for the payload compression: <code>fast-ci</code> (zstd at level 3) or <code>release-size</code>
+     * (xz at level 9). If neither this nor <code>payloadCompression</code> is set the defaults of rpmbuild apply.
+     */
+    @Parameter(property = "payloadProfile")
+    private String payloadProfile;
+
+    /**
+     * The codec the payloads are compressed with, overriding that of <code>payloadProfile</code>. One of
+     * <code>gzip</code>, <code>bzip2</code>, <code>xz</code>, <code>lzma</code>, <code>zstd</code> or
+     * <code>none</code>.
+     */
+    @Parameter(property = "payloadCompression")
+    private String payloadCompression;
+
+    /**
+     * The level the payloads are compressed at, overriding that of <code>payloadProfile</code>.
+     */
+    @Parameter(property = "payloadCompressionLevel")
+    private Integer payloadCompressionLevel;
+
+    /**
+     * The number of threads xz and zstd compress the payloads with. Zero shares the processors available to the build,
+     * accounting for any control group CPU quota, between the rpmbuild processes that may run at once.
+     */
+    @Parameter(defaultValue = "0", property = "payloadThreads")
+    private int payloadThreads;
+
+    /**
+     * The directory that the full output of rpmbuild, and of rpm2cpio/cpio if used, is written to.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/rpm-builder-logs", property = "logDirectory")
+    private File logDirectory;
+
+    /**
+     * The number of trailing lines of output logged when rpmbuild, or rpm2cpio/cpio, fails.
+     */
+    @Parameter(defaultValue = "200", property = "logTailLines")
+    private int logTailLines;
+
+    /**
+     * The minimum interval, in seconds, between the progress summaries logged while rpmbuild is running. All output
+     * is logged when debug logging is enabled.
+     */
+    @Parameter(defaultValue = "10", property = "logSummaryInterval")
+    private int logSummaryInterval;
+
+    /**
+     * The interval, in milliseconds, at which the resource usage of rpmbuild, or rpm2cpio/cpio, and every process they
+     * start is sampled. The usage is summarised in the log and written to a report alongside the output.
+     */
+    @Parameter(defaultValue = "1000", property = "processSampleInterval")
+    private long processSampleInterval;
+
+    /**
+     * The time, in seconds, after which rpmbuild, or rpm2cpio/cpio, is terminated and the build failed. Zero places no
+     * limit.
+     */
+    @Parameter(defaultValue = "0", property = "processTimeout")
+    private long processTimeout;
+
+    /**
+     * The time, in seconds, for which rpmbuild, or rpm2cpio/cpio, may produce no output before it is considered hung,
+     * terminated and the build failed. Zero places no limit.
+     */
+    @Parameter(defaultValue = "0", property = "processIdleTimeout")
+    private long processIdleTimeout;
+
+    /**
+     * Whether to build within a private rpmbuild top directory, created for this execution within
+     * <code>stagingDirectory</code>, rather than within the project directory. The sources are copied into it, other
+     * than archives which are linked where possible, and the built RPMs moved back to the build directory. It is
+     * removed once the build completes.
+     */
+    @Parameter(defaultValue = "false", property = "stageBuild")
+    private boolean stageBuild;
+
+    /**
+     * The directory in which the private top directory is created when <code>stageBuild</code> is set. This may be a
+     * tmpfs, such as <code>/dev/shm</code>, to keep the build directories and buildroots in memory.
+     */
+    @Parameter(defaultValue = "${java.io.tmpdir}", property = "stagingDirectory")
+    private File stagingDirectory;
+
+    /**
+     * The size, in megabytes, of the sources above which the private top directory is instead created within the build
+     * directory, as it is if <code>stagingDirectory</code> lacks room for the sources.
+     */
+    @Parameter(defaultValue = "1024", property = "stagingThreshold")
+    private long stagingThreshold;
+
     /**
      * Whether to attach the RPMs in a zip
      */
     @Parameter(defaultValue = "true", property = "attachZip")
     private boolean attachZip = true;
 
+    /**
+     * How entries are compressed within the attached zip. One of:
+     * <ul>
+     * <li><code>auto</code> - store RPMs whose payload is already compressed and deflate anything else</li>
+     * <li><code>deflate</code> - deflate every entry</li>
+     * <li><code>store</code> - store every entry without compression</li>
+     * </ul>
+     */
+    @Parameter(defaultValue = "auto", property = "zipCompression")
+    private String zipCompression = "auto";
+
+    /**
+     * The deflate compression level (-1 for the default, or 0 to 9) used for deflated zip entries.
+     */
+    @Parameter(defaultValue = "9", property = "zipCompressionLevel")
+    private int zipCompressionLevel = Deflater.BEST_COMPRESSION;
+
+    /**
+     * The number of threads used to deflate zip entries. Zero uses the number of available processors.
+     */
+    @Parameter(defaultValue = "0", property = "zipThreads")
+    private int zipThreads;
+
+    /**
+     * Whether to verify the lead, the header digest and the payload digest of every built RPM, as
+     * <code>rpm -K</code> does, before it is attached. Each RPM is verified as it is read to be zipped and
+     * checksummed, or if no zip is attached, concurrently with the others. A corrupt RPM fails the build.
+     */
+    @Parameter(defaultValue = "true", property = "verifyRPMs")
+    private boolean verifyRPMs = true;
+
+    /**
+     * The checksum algorithms computed for each RPM and recorded in the manifest. These are computed while the zip is
+     * assembled and reused by the deploy goal rather than reading the RPMs again. Supported algorithms are
+     * <code>MD5</code>, <code>SHA-1</code>, <code>SHA-256</code> and <code>SHA-512</code>.
+     */
+    @Parameter(property = "checksumAlgorithms")
+    private List<String> checksumAlgorithms = new ArrayList<>(RPMManifest.DEFAULT_ALGORITHMS);
+
+    /**
+     * Whether to write a combined <code>SHA256SUMS</code> file, in the format used by <code>sha256sum</code>, for
+     * the RPMs into <code>${project.build.directory}</code>. It is deployed along with the RPMs.
+     */
+    @Parameter(defaultValue = "false", property = "generateChecksumsFile")
+    private boolean generateChecksumsFile;
+
     /**
      * Whether to generate a changeLog. For example:
      *
@@ -92,11 +344,51 @@ public class RPMBuilder extends BaseMojo {
 
     /**
      * Whether to unpack(install) any noarch RPMs found in the <code>${project.build.directory}/dependency</code>
-     * directory
+     * directory, along with those listed in <code>rpmDependencies</code>
      */
     @Parameter(defaultValue = "false", property = "installRPMs")
     private boolean installRPMs = false;
 
+    /**
+     * RPMs to install for <code>installRPMs</code>, as Maven coordinates of the form
+     * <code>groupId:artifactId[:extension[:classifier]]:version</code> where the extension defaults to
+     * <code>rpm</code>. They are resolved concurrently from the remote repositories of the project, and each is
+     * extracted directly from the local repository as soon as it is resolved, so that no other plugin need first copy
+     * them into the <code>dependency</code> directory.
+     */
+    @Parameter(property = "rpmDependencies")
+    private List<String> rpmDependencies = new ArrayList<>();
+
+    /**
+     * Whether to extract the RPMs for <code>installRPMs</code> in process rather than via <code>rpm2cpio</code> and
+     * <code>cpio</code>. Payloads that cannot be extracted in process always fall back to those tools.
+     */
+    @Parameter(defaultValue = "true", property = "nativeExtraction")
+    private boolean nativeExtraction = true;
+
+    /**
+     * The number of RPMs extracted concurrently for <code>installRPMs</code>. Zero uses the number of available
+     * processors.
+     */
+    @Parameter(defaultValue = "0", property = "extractionThreads")
+    private int extractionThreads;
+
+    /**
+     * Whether <code>installRPMs</code> extracts the RPMs into a private sysroot, <code>sysrootDirectory</code>, rather
+     * than the root filesystem. The sysroot is recreated for each build and passed to rpmbuild as the
+     * <code>sysroot</code> macro.
+     */
+    @Parameter(defaultValue = "false", property = "installSysroot")
+    private boolean installSysroot;
+
+    /**
+     * If set, the directory in which the extracted payload of each RPM for <code>installRPMs</code> is kept, keyed by
+     * the checksum of the RPM, so that an RPM is only extracted once. The cached files are copied into the root
+     * filesystem, or hardlinked into the sysroot where the filesystem allows.
+     */
+    @Parameter(property = "extractionCacheDirectory")
+    private File extractionCacheDirectory;
+
     /**
      * Custom extra macros to pass through. For example:
      *
@@ -111,17 +403,49 @@ public class RPMBuilder extends BaseMojo {
     @Parameter(property = "macros")
     private Map<String, String> macros = new HashMap<>();
 
+    /**
+     * Whether to skip rpmbuild when none of the build inputs have changed since the last build. The inputs are the spec
+     * file, the files within the working directory, the dependency RPMs, the plugin configuration and the version
+     * derived values. If they match the fingerprint recorded in <code>${project.build.directory}</code> by the previous
+     * build, and its outputs still exist, those outputs are attached again instead.
+     */
+    @Parameter(defaultValue = "false", property = "incremental")
+    private boolean incremental;
+
     public void execute()
             throws MojoExecutionException {
+        BuildMetrics metrics = new BuildMetrics(project.getId(), "package");
+        boolean success = false;
+        try {
+            build(metrics);
+            success = true;
+        } finally {
+            writeMetrics(metrics, success);
+        }
+    }
 
+    /**
+     * Builds and attaches the RPMs.
+     */
+    void build(BuildMetrics metrics) throws MojoExecutionException {
         checkForUnknownParameters();
+        BuildMode mode = BuildMode.fromString(buildMode);
+        List<Artifact> dependencyArtifacts = parseRPMDependencies();
+
+        if (zipCompressionLevel < Deflater.DEFAULT_COMPRESSION || zipCompressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new MojoExecutionException(
+                    "Invalid zipCompressionLevel " + zipCompressionLevel + "; expected a value between -1 and 9");
+        }
 
-        File buildDir = new File(outputDirectory, "build");
-        File specDir = new File(outputDirectory, "spec");
-        //noinspection ResultOfMethodCallIgnored
-        buildDir.mkdirs();
-        //noinspection ResultOfMethodCallIgnored
-        specDir.mkdirs();
+        List<String> algorithms = new ArrayList<>(checksumAlgorithms);
+        if (generateChecksumsFile && !algorithms.contains(Checksums.SHA256)) {
+            algorithms.add(Checksums.SHA256);
+        }
+        try {
+            Checksums.validate(algorithms);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
 
         String serial = Integer.toString(Version.getIntegerBuildNumber(project.getVersion()));
         String wrappedBuild = project.getProperties().getProperty("wrappedBuild");
@@ -144,167 +468,877 @@ public class RPMBuilder extends BaseMojo {
                         + " meadalpha=" + meadAlpha + " meadrel=" + meadRel
                         + " meadversion=" + meadVersion + " serial=" + serial);
 
-        if (installRPMs) {
-            File rpmDirectory = new File(outputDirectory, "dependency/noarch");
-
-            if (!rpmDirectory.exists()) {
-                throw new MojoExecutionException("Configured to install RPMs but no RPMs found in " + rpmDirectory);
-            }
-            try (Stream<Path> walk = Files.walk(rpmDirectory.toPath(), 1)) {
-                List<Path> rpms = walk.filter(f -> f.getFileName().toString().endsWith(".noarch.rpm")).toList();
-                if (rpms.isEmpty()) {
-                    throw new MojoExecutionException("Configured to install RPMs but no RPMs found in " + rpmDirectory);
-                }
-                for (Path rpm : rpms) {
-                    getLog().info("Extracting rpm " + rpm + " using rpm2cpio/cpio");
-                    AtomicReference<Integer> exitCode = new AtomicReference<>(0);
-                    List<String> args = new ArrayList<>();
-                    args.add("-idmuv");
-                    args.add("--quiet");
-                    args.add("-D");
-                    args.add("/");
-
-                    ProcessBuilder.newBuilder("rpm2cpio")
-                            .directory(rpmDirectory.toPath())
-                            .arguments(rpm.getFileName().toString())
-                            .exitCodeChecker(ec -> {
-                                exitCode.set(ec);
-                                return true;
-                            })
-                            .output()
-                            .pipeTo(Path.of("/usr/bin/cpio"))
-                            .arguments(args)
-                            .output()
-                            .consumeLinesWith(8192, getLog()::info)
-                            .error()
-                            .redirect()
-                            .run();
-
-                    if (exitCode.get() != 0) {
-                        getLog().error("Error building RPM");
-                        throw new MojoExecutionException("Process exited with code " + exitCode.get());
-                    }
+        List<SpecBuild> builds = findSpecFiles();
+        Map<String, String> tuningMacros = createTuningMacros(builds.size());
+        String groovyScript = readGroovyScript(groovyPatch);
+        List<String> transformerScripts = new ArrayList<>();
+        for (String transformer : specTransformers) {
+            transformerScripts.add(readGroovyScript(transformer));
+        }
+        Path fingerprintFile = outputDirectory.toPath().resolve(BuildFingerprint.FILENAME);
+        String fingerprint = null;
+        if (incremental) {
+            try (BuildMetrics.Phase phase = metrics.start("fingerprint")) {
+                fingerprint = computeFingerprint(
+                        builds,
+                        groovyScript,
+                        transformerScripts,
+                        wrappedBuild,
+                        meadAlpha,
+                        meadVersion,
+                        serial,
+                        dependencyArtifacts);
+                Optional<BuildFingerprint.Outputs> previous = BuildFingerprint.Outputs.load(fingerprintFile);
+                if (previous.isPresent() && previous.get().fingerprint().equals(fingerprint)
+                        && previous.get().exists()) {
+                    getLog().info("Build inputs are unchanged since the previous build; skipping rpmbuild");
+                    attach(previous.get().specs(), previous.get().zip(), previous.get().rpms().size(), mode);
+                    return;
                 }
             } catch (IOException e) {
                 throw new MojoExecutionException(e);
             }
         }
+        // Remove any stale state so that a failure part way through cannot leave it looking current.
+        Path manifestFile = outputDirectory.toPath().resolve(RPMManifest.FILENAME);
+        try {
+            Files.deleteIfExists(fingerprintFile);
+            Files.deleteIfExists(manifestFile);
+            Files.deleteIfExists(outputDirectory.toPath().resolve(Checksums.SUMS_FILENAME));
+        } catch (IOException e) {
+            throw new MojoExecutionException(e);
+        }
 
-        try (Stream<Path> walk = Files.walk(workingDirectory.toPath(), 1)) {
+        if (installRPMs) {
+            installDependencies(metrics, dependencyArtifacts);
+        }
 
-            List<Path> specFiles = walk.filter(f -> f.getFileName().toString().endsWith(".spec")).toList();
-            if (specFiles.size() != 1) {
-                throw new MojoExecutionException(
-                        "Incorrect number of spec files found (" + specFiles.size() + ") " + specFiles);
-            }
-            Path specFile = specFiles.get(0);
-            Path targetSpecFile = specDir.toPath().resolve(specFile.toFile().getName());
-            Files.copy(specFile, targetSpecFile, StandardCopyOption.REPLACE_EXISTING);
+        try {
+            Map<String, Object> bindings = new LinkedHashMap<>();
+            bindings.put("project", project);
+            bindings.put("wrappedBuild", wrappedBuild);
+            // Its possible there might be no delimiter so set the macro to 'empty'
+            bindings.put("meadalpha", isEmpty(meadAlpha) ? "%{nil}" : meadAlpha);
+            bindings.put("meadrel", meadRel);
+            bindings.put("meadversion", meadVersion);
+            bindings.put("serial", serial);
 
-            if (isNotEmpty(groovyPatch)) {
+            for (SpecBuild build : builds) {
+                Files.createDirectories(build.specDirectory());
+                Files.createDirectories(build.buildDirectory());
+            }
+            if (isNotEmpty(groovyScript)) {
+                // The script edits the copied spec files itself so the pipeline then reads the patched copies.
+                for (SpecBuild build : builds) {
+                    Files.copy(build.source(), build.target(), StandardCopyOption.REPLACE_EXISTING);
+                }
                 getLog().info("Using groovy script: " + groovyPatch);
-                final GroovyShell shell = new GroovyShell();
-                final Script script = shell.parse(groovyPatch);
-                script.setProperty("wrappedBuild", wrappedBuild);
-                // Its possible there might be no delimiter so set the macro to 'empty'
-                script.setProperty("meadalpha", isEmpty(meadAlpha) ? "%{nil}" : meadAlpha);
-                script.setProperty("meadrel", meadRel);
-                script.setProperty("meadversion", meadVersion);
-                script.setProperty("serial", serial);
-                script.run();
+                Map<String, Object> patchBindings = new LinkedHashMap<>(bindings);
+                patchBindings.put("specFiles", builds.stream().map(SpecBuild::target).toList());
+                createScript(groovyScript, patchBindings).run();
             }
+            final String changeLogTitle;
             if (changeLog != null && changeLog.generate) {
                 LocalDateTime dt = LocalDateTime.now();
-                String title = "* " + dt.format(DateTimeFormatter.ofPattern("E MMM dd yyyy")) + " "
+                changeLogTitle = "* " + dt.format(DateTimeFormatter.ofPattern("E MMM dd yyyy")) + " "
                         + changeLog.email + " - "
                         + meadVersion + "-"
                         + serial
                         + meadAlpha
                         + meadRel;
 
-                getLog().info("Generating changelog with title '" + title + "' and message " + changeLog.message);
-
-                List<String> specLines = Files.readAllLines(targetSpecFile);
-                List<String> newSpecLines = new ArrayList<>();
-                specLines.forEach(line -> {
-                    if (line.startsWith("%changelog")) {
-                        newSpecLines.add(line);
-                        newSpecLines.add(title);
-                        newSpecLines.add(changeLog.message);
-                        newSpecLines.add("");
-                    } else {
-                        newSpecLines.add(line);
+                getLog().info(
+                        "Generating changelog with title '" + changeLogTitle + "' and message " + changeLog.message);
+            } else {
+                changeLogTitle = null;
+            }
+
+            BuildStaging staging = null;
+            if (stageBuild) {
+                try (BuildMetrics.Phase phase = metrics.start("stage")) {
+                    staging = BuildStaging.create(
+                            getLog(),
+                            "rpm-builder-" + project.getArtifactId(),
+                            workingDirectory.toPath().toAbsolutePath(),
+                            this::isExcludedSource,
+                            stagingDirectory.toPath(),
+                            outputDirectory.toPath().resolve(BuildStaging.FALLBACK_DIRECTORY),
+                            stagingThreshold * 1024 * 1024);
+                    phase.addBytes(staging.getCopiedBytes());
+                }
+            }
+            try {
+                BuildStaging topDirectory = staging;
+                buildSpecs(builds, build -> {
+                    prepareSpec(
+                            metrics,
+                            build,
+                            isNotEmpty(groovyScript),
+                            transformerScripts,
+                            bindings,
+                            changeLogTitle);
+                    if (topDirectory != null) {
+                        Files.createDirectories(topDirectory.getBuildDirectory(build.name()));
                     }
+                    checkCancelled();
+                    runRPMBuild(metrics, build, topDirectory, mode, tuningMacros, builds.size() > 1);
                 });
-                Files.write(targetSpecFile, newSpecLines, Charset.defaultCharset());
+                if (staging != null) {
+                    List<Path> moved = staging.moveRPMs(outputDirectory.toPath());
+                    getLog().info("Moved " + moved.size() + " rpms from " + staging.getTopDirectory());
+                }
+            } finally {
+                if (staging != null) {
+                    staging.close();
+                }
             }
 
-            List<String> args = new ArrayList<>();
+            checkCancelled();
+            List<File> rpms;
+            try (BuildMetrics.Phase phase = metrics.start("scan")) {
+                rpms = findRPMs(outputDirectory.toPath());
+                rpms.forEach(rpm -> phase.addFile(rpm.toPath()));
+            }
+
+            // Checksums are computed, and the rpms verified, as the zip reads each rpm so that they are only read once.
+            Map<File, Map<String, String>> checksums = new ConcurrentHashMap<>();
+            Path zip = null;
+            if (verifyRPMs && !attachZip) {
+                try (BuildMetrics.Phase phase = metrics.start("verify")) {
+                    RPMVerifier
+                            .verifyAll(rpms, algorithms, HostResources.availableProcessors(getLog()), checksums::put);
+                    rpms.forEach(rpm -> phase.addFile(rpm.toPath()));
+                }
+                getLog().info("Verified " + rpms.size() + " rpms");
+            }
+            if (attachZip) {
+                try (BuildMetrics.Phase phase = metrics.start("zip")) {
+                    zip = outputDirectory.toPath()
+                            .resolve(project.getArtifactId() + "-" + project.getVersion() + ".zip");
+                    new RPMZipArchiver(
+                            getLog(),
+                            RPMZipArchiver.Compression.fromString(zipCompression),
+                            zipCompressionLevel,
+                            zipThreads)
+                            .archive(
+                                    outputDirectory.toPath(),
+                                    rpms,
+                                    zip,
+                                    "rpm-builder buildMode=" + mode.getName(),
+                                    algorithms,
+                                    verifyRPMs,
+                                    checksums::put);
+                    rpms.forEach(rpm -> phase.addFile(rpm.toPath()));
+                }
+                if (verifyRPMs) {
+                    getLog().info("Verified " + rpms.size() + " rpms");
+                }
+            }
+            try (BuildMetrics.Phase phase = metrics.start("checksum")) {
+                RPMManifest manifest = RPMManifest
+                        .create(
+                                project.getId(),
+                                mode,
+                                verifyRPMs,
+                                outputDirectory.toPath(),
+                                rpms,
+                                algorithms,
+                                checksums);
+                manifest.write(manifestFile);
+                if (generateChecksumsFile) {
+                    Map<String, String> sums = new LinkedHashMap<>();
+                    manifest.getRPMs().forEach(rpm -> sums.put(rpm.path(), rpm.checksums().get(Checksums.SHA256)));
+                    Checksums.writeSums(outputDirectory.toPath().resolve(Checksums.SUMS_FILENAME), sums);
+                }
+                // Only those rpms not already checksummed by the zip are read again.
+                rpms.stream().filter(rpm -> !checksums.containsKey(rpm)).forEach(rpm -> phase.addFile(rpm.toPath()));
+            }
+            List<Path> targetSpecFiles = builds.stream().map(SpecBuild::target).toList();
+            attach(targetSpecFiles, zip, rpms.size(), mode);
+
+            if (incremental) {
+                new BuildFingerprint.Outputs(
+                        fingerprint,
+                        targetSpecFiles,
+                        zip,
+                        rpms.stream().map(File::toPath).toList())
+                        .store(fingerprintFile);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * A spec file to build along with the directories it is built in.
+     *
+     * @param source the spec file within the working directory
+     * @param specDirectory the directory the patched spec file is written to (<code>_specdir</code>)
+     * @param buildDirectory the directory the spec file is built in (<code>_builddir</code>)
+     */
+    private record SpecBuild(Path source, Path specDirectory, Path buildDirectory) {
+
+        Path target() {
+            return specDirectory.resolve(source.getFileName());
+        }
+
+        String name() {
+            return source.getFileName().toString();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SpecTask {
+        void run(SpecBuild build) throws MojoExecutionException, IOException;
+    }
+
+    /**
+     * Returns the macros tuning rpmbuild for the host: the number of jobs and the payload compression, each only if
+     * configured. Unless set explicitly, the compression threads are a share of the processors available to the build
+     * between the rpmbuild processes that may run at once, being those of this execution and of any other modules built
+     * in parallel, up to the limit of the session.
+     */
+    private Map<String, String> createTuningMacros(int specCount) throws MojoExecutionException {
+        PayloadCompression compression;
+        try {
+            compression = PayloadCompression.resolve(payloadProfile, payloadCompression, payloadCompressionLevel);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        int processors = HostResources.availableProcessors(getLog());
+        int limit = RPMBuildGovernor
+                .forSession(getLog(), session.getRepositorySession(), maxConcurrentBuilds, buildMemory)
+                .getLimit();
+        int concurrentBuilds = Math.min(
+                limit,
+                session.getRequest().getDegreeOfConcurrency()
+                        * Math.min(specCount, buildThreads > 0 ? buildThreads : processors));
+        int share = Math.max(1, processors / Math.max(1, concurrentBuilds));
+
+        Map<String, String> tuning = new LinkedHashMap<>();
+        if (buildJobs > 0) {
+            tuning.put("_smp_build_ncpus", Integer.toString(buildJobs));
+        }
+        if (compression != null) {
+            String payload = compression.toMacro(payloadThreads > 0 ? payloadThreads : share);
+            tuning.put("_binary_payload", payload);
+            tuning.put("_source_payload", payload);
+        }
+        getLog().info(
+                "Using " + processors + " available processors for up to " + concurrentBuilds
+                        + " concurrent rpmbuild processes: " + tuning);
+        return tuning;
+    }
+
+    /**
+     * Runs the task for each spec file on a pool of <code>buildThreads</code> threads, reporting every failure once
+     * all have completed.
+     */
+    private void buildSpecs(List<SpecBuild> builds, SpecTask task) throws MojoExecutionException, IOException {
+        if (builds.size() == 1) {
+            task.run(builds.get(0));
+            return;
+        }
+        int threads = Math.min(
+                buildThreads > 0 ? buildThreads : HostResources.availableProcessors(getLog()),
+                builds.size());
+        getLog().info("Building " + builds.size() + " spec files using " + threads + " threads");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Map<SpecBuild, Future<?>> results = new LinkedHashMap<>();
+            for (SpecBuild build : builds) {
+                results.put(build, executor.submit(() -> {
+                    task.run(build);
+                    return null;
+                }));
+            }
+            List<String> failures = new ArrayList<>();
+            for (Map.Entry<SpecBuild, Future<?>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException e) {
+                    getLog().error("Error building " + result.getKey().name(), e.getCause());
+                    failures.add(result.getKey().name() + " (" + e.getCause().getMessage() + ")");
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException(
+                        "Unable to build " + failures.size() + " of " + builds.size() + " spec files: " + failures);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while building spec files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Streams the spec file through the spec pipeline into its spec directory.
+     */
+    private void prepareSpec(
+            BuildMetrics metrics,
+            SpecBuild build,
+            boolean patched,
+            List<String> transformerScripts,
+            Map<String, Object> bindings,
+            String changeLogTitle) throws MojoExecutionException, IOException {
+        try (BuildMetrics.Phase phase = metrics.start("spec", build.name())) {
+            Path specSource = patched ? build.target() : build.source();
+            SpecPipeline pipeline = new SpecPipeline(
+                    isEmpty(encoding) ? StandardCharsets.UTF_8 : Charset.forName(encoding));
+            if (!specDefines.isEmpty()) {
+                pipeline.add(SpecTransformer.defines(specDefines));
+            }
+            if (isNotEmpty(specVersion)) {
+                pipeline.add(SpecTransformer.stamp("Version", specVersion));
+            }
+            if (isNotEmpty(specRelease)) {
+                pipeline.add(SpecTransformer.stamp("Release", specRelease));
+            }
+            Map<String, Object> specBindings = new LinkedHashMap<>(bindings);
+            specBindings.put("specFile", build.target());
+            for (String transformer : transformerScripts) {
+                Object result = createScript(transformer, specBindings).run();
+                if (!(result instanceof Closure<?> closure)) {
+                    throw new MojoExecutionException(
+                            "Spec transformer script must return a closure taking each line but returned " + result);
+                }
+                pipeline.add(SpecTransformer.groovy(closure));
+            }
+            if (changeLogTitle != null) {
+                pipeline.add(SpecTransformer.changelog(changeLogTitle, changeLog.message));
+            }
+            if (!pipeline.isEmpty()) {
+                pipeline.run(specSource, build.target());
+            } else if (!specSource.equals(build.target())) {
+                Files.copy(specSource, build.target(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            phase.addFile(build.target());
+        }
+    }
+
+    /**
+     * Runs rpmbuild for the patched spec file. Its output is written to a log file, with a summary of progress logged
+     * under the name of the spec file. If staged, the build takes place in the private top directory.
+     */
+    private void runRPMBuild(
+            BuildMetrics metrics,
+            SpecBuild build,
+            BuildStaging staging,
+            BuildMode mode,
+            Map<String, String> tuningMacros,
+            boolean prefixOutput) throws MojoExecutionException {
+        List<String> args = new ArrayList<>();
+        if (staging == null) {
             args.add("--define=_topdir " + workingDirectory.getAbsolutePath());
             args.add("--define=_sourcedir " + workingDirectory.getAbsolutePath());
             args.add("--define=_rpmdir " + outputDirectory.getAbsolutePath());
             args.add("--define=_srcrpmdir " + outputDirectory.getAbsolutePath());
-            args.add("--define=_specdir " + specDir.getAbsolutePath());
-            args.add("--define=_builddir " + buildDir.getAbsolutePath());
-            macros.forEach((key, value) -> args.add("--define=" + key + " " + value));
-            args.add("-ba");
-            args.add(targetSpecFile.toAbsolutePath().toString());
-
-            // Change delimiter for shell copying/debugging.
-            getLog().info(
-                    "About to execute:\trpmbuild "
-                            + args.stream().map(a -> {
-                                if (a.contains("=")) {
-                                    return a.replaceAll("=", "='") + "'";
-                                } else {
-                                    return a;
-                                }
-                            }).collect(Collectors.joining(" ")));
+            args.add("--define=_specdir " + build.specDirectory().toAbsolutePath());
+            args.add("--define=_builddir " + build.buildDirectory().toAbsolutePath());
+        } else {
+            args.add("--define=_topdir " + staging.getTopDirectory());
+            args.add("--define=_sourcedir " + staging.getSourceDirectory());
+            args.add("--define=_rpmdir " + staging.getRPMDirectory());
+            args.add("--define=_srcrpmdir " + staging.getSRPMDirectory());
+            args.add("--define=_specdir " + build.specDirectory().toAbsolutePath());
+            args.add("--define=_builddir " + staging.getBuildDirectory(build.name()));
+        }
+        if (installRPMs && installSysroot) {
+            args.add("--define=sysroot " + sysrootDirectory.getAbsolutePath());
+        }
+        // Any of these may be overridden by the configured macros which, defined later, take precedence.
+        new TreeMap<>(mode.getMacros()).forEach((key, value) -> args.add("--define=" + key + " " + value));
+        tuningMacros.forEach((key, value) -> args.add("--define=" + key + " " + value));
+        macros.forEach((key, value) -> args.add("--define=" + key + " " + value));
+        args.addAll(mode.getArguments());
+        args.add(mode.getOption());
+        args.add(build.target().toAbsolutePath().toString());
+
+        // Change delimiter for shell copying/debugging.
+        getLog().info(
+                "About to execute:\trpmbuild "
+                        + args.stream().map(a -> {
+                            if (a.contains("=")) {
+                                return a.replaceAll("=", "='") + "'";
+                            } else {
+                                return a;
+                            }
+                        }).collect(Collectors.joining(" ")));
 
+        RPMBuildGovernor governor = RPMBuildGovernor
+                .forSession(getLog(), session.getRepositorySession(), maxConcurrentBuilds, buildMemory);
+        if (!governor.tryAcquire()) {
+            try (BuildMetrics.Phase phase = metrics.start("queue", build.name())) {
+                getLog().info(
+                        "Waiting to build " + build.name() + " as " + governor.getLimit()
+                                + " rpmbuild processes are already running");
+                governor.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting to build " + build.name(), e);
+            }
+        }
+        try (BuildMetrics.Phase phase = metrics.start("rpmbuild", build.name())) {
             AtomicReference<Integer> exitCode = new AtomicReference<>(0);
-            ProcessBuilder.newBuilder("rpmbuild")
-                    .directory(workingDirectory.toPath())
-                    .arguments(args)
+            ProcessLogSink sink = createLogSink(
+                    "rpmbuild " + build.name(),
+                    false,
+                    "rpmbuild-" + build.name() + ".log",
+                    line -> line.startsWith("Wrote: "));
+            ProcessSampler sampler = createSampler(
+                    "rpmbuild " + build.name(),
+                    false,
+                    "rpmbuild-" + build.name() + ".processes.json",
+                    sink);
+            try (sink; sampler) {
+                ProcessBuilder.newBuilder("rpmbuild")
+                        .directory(workingDirectory.toPath())
+                        .arguments(args)
+                        .exitCodeChecker(ec -> {
+                            exitCode.set(ec);
+                            return true;
+                        })
+                        .whileRunning(sampler::attach)
+                        .output()
+                        .consumeLinesWith(8192, sink::accept)
+                        .error()
+                        .redirect()
+                        .run();
+            }
+
+            checkCancelled();
+            if (sampler.getKillReason() != null) {
+                sink.logTail();
+                throw new MojoExecutionException(
+                        "rpmbuild " + build.name() + " was terminated as " + sampler.getKillReason());
+            }
+            if (exitCode.get() != 0) {
+                sink.logTail();
+                getLog().error("Error building RPM" + (prefixOutput ? " from " + build.name() : ""));
+                throw new MojoExecutionException("Process exited with code " + exitCode.get());
+            }
+        } finally {
+            governor.release();
+        }
+    }
+
+    /**
+     * Installs the RPMs in the <code>dependency</code> directory and those listed in <code>rpmDependencies</code>.
+     */
+    void installDependencies(BuildMetrics metrics, List<Artifact> dependencyArtifacts) throws MojoExecutionException {
+        Path rpmDirectory = outputDirectory.toPath().resolve("dependency/noarch").toAbsolutePath();
+        // Each RPM is located as it is installed, so that those to be resolved are extracted as they arrive.
+        Map<String, Callable<Path>> rpms = new LinkedHashMap<>();
+        try {
+            if (Files.isDirectory(rpmDirectory)) {
+                try (Stream<Path> walk = Files.walk(rpmDirectory, 1)) {
+                    walk.filter(f -> f.getFileName().toString().endsWith(".noarch.rpm"))
+                            .forEach(rpm -> rpms.put(rpm.toString(), () -> rpm));
+                }
+            }
+            for (Artifact artifact : dependencyArtifacts) {
+                rpms.put(artifact.toString(), () -> resolveRPM(artifact));
+            }
+            if (rpms.isEmpty()) {
+                throw new MojoExecutionException(
+                        "Configured to install RPMs but no RPMs found in " + rpmDirectory
+                                + " and no rpmDependencies configured");
+            }
+            try (BuildMetrics.Phase phase = metrics.start("extract")) {
+                installRPMs(phase, rpms);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * Extracts the RPMs into the root filesystem, or the sysroot, in parallel. Unless disabled, extraction is performed
+     * in process and falls back to <code>rpm2cpio</code> and <code>cpio</code> for payloads that cannot be handled
+     * natively. If the extraction cache is enabled each RPM is extracted into the cache, unless already there, and
+     * materialized from it.
+     *
+     * @param phase the phase to which each RPM is added
+     * @param rpms locates, resolving if necessary, each RPM by its name
+     */
+    private void installRPMs(BuildMetrics.Phase phase, Map<String, Callable<Path>> rpms)
+            throws MojoExecutionException, IOException {
+        Path root = Path.of("/");
+        if (installSysroot) {
+            root = sysrootDirectory.toPath().toAbsolutePath();
+            ExtractionCache.recreateSysroot(root);
+        }
+        Path target = root;
+        ExtractionCache cache = extractionCacheDirectory == null ? null
+                : new ExtractionCache(getLog(), extractionCacheDirectory.toPath());
+        AtomicInteger cached = new AtomicInteger();
+        int threads = extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, rpms.size()));
+        try {
+            Map<String, Future<?>> extractions = new LinkedHashMap<>();
+            for (Map.Entry<String, Callable<Path>> entry : rpms.entrySet()) {
+                extractions.put(entry.getKey(), executor.submit(() -> {
+                    Path rpm = entry.getValue().call();
+                    phase.addFile(rpm);
+                    if (cache == null) {
+                        extract(rpm, target);
+                        return null;
+                    }
+                    ExtractionCache.Result result = cache.install(
+                            rpm,
+                            directory -> extract(rpm, directory),
+                            target,
+                            installSysroot);
+                    if (result.cached()) {
+                        cached.incrementAndGet();
+                    }
+                    getLog().info(
+                            "Installed rpm " + rpm + (result.cached() ? " from" : " via") + " the extraction cache ("
+                                    + result.linked() + " files linked, " + result.copied() + " copied)");
+                    return null;
+                }));
+            }
+            List<String> failures = new ArrayList<>();
+            for (Map.Entry<String, Future<?>> extraction : extractions.entrySet()) {
+                try {
+                    extraction.getValue().get();
+                } catch (ExecutionException e) {
+                    getLog().error("Error extracting rpm " + extraction.getKey(), e.getCause());
+                    failures.add(extraction.getKey() + " (" + e.getCause().getMessage() + ")");
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException("Unable to extract " + failures.size() + " rpms: " + failures);
+            }
+            if (cache != null) {
+                getLog().info(
+                        "Installed " + rpms.size() + " rpms into " + target + ", " + cached.get()
+                                + " of which were already in the extraction cache");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while extracting rpms", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts the RPM into the directory, natively unless disabled or unsupported.
+     */
+    private void extract(Path rpm, Path directory) throws MojoExecutionException, IOException {
+        if (nativeExtraction) {
+            try {
+                int entries = new RPMExtractor(getLog(), directory).extract(rpm);
+                getLog().info("Extracted " + entries + " entries from rpm " + rpm);
+                return;
+            } catch (RPMExtractor.UnsupportedPayloadException e) {
+                getLog().info("Unable to extract rpm " + rpm + " natively: " + e.getMessage());
+            }
+        }
+        extractWithCpio(rpm, directory);
+    }
+
+    private void extractWithCpio(Path rpm, Path directory) throws MojoExecutionException {
+        getLog().info("Extracting rpm " + rpm + " using rpm2cpio/cpio");
+        AtomicReference<Integer> exitCode = new AtomicReference<>(0);
+        List<String> args = new ArrayList<>();
+        args.add("-idmuv");
+        args.add("--quiet");
+        args.add("-D");
+        args.add(directory.toString());
+
+        // An extraction is one of many, so only its errors and warnings are logged above debug level.
+        ProcessLogSink sink = createLogSink(
+                "cpio " + rpm.getFileName(),
+                true,
+                "rpm2cpio-" + rpm.getFileName() + ".log",
+                line -> !line.startsWith("cpio:"));
+        ProcessSampler sampler = createSampler(
+                "cpio " + rpm.getFileName(),
+                true,
+                "rpm2cpio-" + rpm.getFileName() + ".processes.json",
+                sink);
+        try (sink; sampler) {
+            ProcessBuilder.newBuilder("rpm2cpio")
+                    .directory(rpm.toAbsolutePath().getParent())
+                    .arguments(rpm.getFileName().toString())
                     .exitCodeChecker(ec -> {
                         exitCode.set(ec);
                         return true;
                     })
+                    .whileRunning(sampler::attach)
                     .output()
-                    .consumeLinesWith(8192, getLog()::info)
+                    .pipeTo(Path.of("/usr/bin/cpio"))
+                    .arguments(args)
+                    .whileRunning(sampler::attach)
+                    .output()
+                    .consumeLinesWith(8192, sink::accept)
                     .error()
                     .redirect()
                     .run();
+        }
 
-            if (exitCode.get() != 0) {
-                getLog().error("Error building RPM");
-                throw new MojoExecutionException("Process exited with code " + exitCode.get());
+        if (sampler.getKillReason() != null) {
+            sink.logTail();
+            throw new MojoExecutionException(
+                    "Extracting rpm " + rpm + " was terminated as " + sampler.getKillReason());
+        }
+        if (exitCode.get() != 0) {
+            sink.logTail();
+            getLog().error("Error extracting RPM " + rpm);
+            throw new MojoExecutionException("Process exited with code " + exitCode.get());
+        }
+    }
+
+    /**
+     * Parses <code>rpmDependencies</code>, defaulting the extension of each to <code>rpm</code>.
+     */
+    private List<Artifact> parseRPMDependencies() throws MojoExecutionException {
+        List<Artifact> artifacts = new ArrayList<>();
+        for (String coordinates : rpmDependencies) {
+            String[] parts = coordinates.trim().split(":");
+            try {
+                artifacts.add(
+                        parts.length == 3 ? new DefaultArtifact(parts[0], parts[1], "rpm", parts[2])
+                                : new DefaultArtifact(coordinates.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(
+                        "Invalid rpmDependency '" + coordinates
+                                + "'; expected groupId:artifactId[:extension[:classifier]]:version",
+                        e);
             }
+        }
+        return artifacts;
+    }
 
-            if (attachZip) {
-                List<File> rpms = findRPMs(outputDirectory.toPath());
-                File output = new File(outputDirectory, project.getArtifactId() + "-" + project.getVersion() + ".zip");
-                try (final OutputStream out = Files.newOutputStream(output.toPath());
-                        final ZipArchiveOutputStream archive = new ArchiveStreamFactory()
-                                .createArchiveOutputStream(ArchiveStreamFactory.ZIP, out)) {
-                    archive.setMethod(ZipEntry.DEFLATED);
-                    archive.setLevel(Deflater.BEST_COMPRESSION);
-
-                    for (File path : rpms) {
-                        String entryName = FilenameUtils
-                                .normalize(outputDirectory.toPath().relativize(path.toPath()).toString(), true);
-                        archive.putArchiveEntry(new ZipArchiveEntry(path, entryName));
-                        IOUtils.copy(Files.newInputStream(path.toPath()), archive);
-                        archive.closeArchiveEntry();
+    /**
+     * Resolves an RPM from the remote repositories of the project, returning its file in the local repository.
+     */
+    private Path resolveRPM(Artifact artifact) throws ArtifactResolutionException {
+        Artifact resolved = repositorySystem
+                .resolveArtifact(
+                        session.getRepositorySession(),
+                        new ArtifactRequest(artifact, project.getRemoteProjectRepositories(), null))
+                .getArtifact();
+        getLog().debug("Resolved rpm " + artifact + " to " + resolved.getFile());
+        return resolved.getFile().toPath();
+    }
+
+    /**
+     * Creates a sink for the output of a process, written to the named file in the log directory.
+     */
+    private ProcessLogSink createLogSink(String name, boolean quiet, String fileName, Predicate<String> countsFile) {
+        return new ProcessLogSink(
+                getLog(),
+                name,
+                quiet,
+                logDirectory.toPath().resolve(fileName),
+                countsFile,
+                logTailLines,
+                TimeUnit.SECONDS.toMillis(logSummaryInterval));
+    }
+
+    /**
+     * Creates a sampler and watchdog for a process whose output is received by the sink, reporting to the named file
+     * in the log directory.
+     */
+    private ProcessSampler createSampler(String name, boolean quiet, String fileName, ProcessLogSink sink) {
+        return new ProcessSampler(
+                getLog(),
+                name,
+                quiet,
+                logDirectory.toPath().resolve(fileName),
+                processSampleInterval,
+                processTimeout,
+                processIdleTimeout,
+                sink::getLastOutput,
+                this::isCancelled);
+    }
+
+    /**
+     * Whether the build in progress has been cancelled, which terminates any running rpmbuild. Builds are only
+     * cancelled by the watch goal, when newer changes arrive.
+     */
+    boolean isCancelled() {
+        return false;
+    }
+
+    private void checkCancelled() throws MojoExecutionException {
+        if (isCancelled()) {
+            throw new MojoExecutionException("The build was cancelled");
+        }
+    }
+
+    /**
+     * Locates the spec files within the working directory. A single spec file is built in the <code>build</code>
+     * directory; when there are several each is given its own subdirectory of it, named after the spec file, so that
+     * concurrent builds are isolated from each other. The patched spec files are always written directly to the
+     * <code>spec</code> directory, where they cannot collide as they share a source directory, so that groovyPatch
+     * scripts find them where they always have.
+     */
+    private List<SpecBuild> findSpecFiles() throws MojoExecutionException {
+        try (Stream<Path> walk = Files.walk(workingDirectory.toPath(), 1)) {
+            List<Path> specFiles = walk.filter(f -> f.getFileName().toString().endsWith(".spec")).sorted().toList();
+            if (specFiles.isEmpty()) {
+                throw new MojoExecutionException(
+                        "Incorrect number of spec files found (" + specFiles.size() + ") " + specFiles);
+            }
+            Path buildDir = outputDirectory.toPath().resolve("build");
+            Path specDir = outputDirectory.toPath().resolve("spec");
+            if (specFiles.size() == 1) {
+                return List.of(new SpecBuild(specFiles.get(0), specDir, buildDir));
+            }
+            return specFiles.stream().map(spec -> {
+                String name = spec.getFileName().toString().replaceFirst("\\.spec$", "");
+                return new SpecBuild(spec, specDir, buildDir.resolve(name));
+            }).toList();
+        } catch (IOException e) {
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * Returns the source of a groovy script, reading it if the value refers to a file or classpath resource.
+     */
+    private String readGroovyScript(String value) throws MojoExecutionException {
+        if (isEmpty(value)) {
+            return value;
+        }
+        String reference = value.trim();
+        try {
+            if (reference.startsWith("file:")) {
+                Path script = workingDirectory.toPath().resolve(reference.substring("file:".length()));
+                if (!Files.isRegularFile(script)) {
+                    throw new MojoExecutionException("Unable to find groovy script " + script);
+                }
+                return Files.readString(script, StandardCharsets.UTF_8);
+            } else if (reference.startsWith("classpath:")) {
+                String name = reference.substring("classpath:".length()).replaceFirst("^/", "");
+                try (InputStream in = getClass().getClassLoader().getResourceAsStream(name)) {
+                    if (in == null) {
+                        throw new MojoExecutionException("Unable to find groovy script " + name + " on the classpath");
                     }
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
                 }
-                getLog().info("Attaching " + output.getName() + " to project containing " + rpms.size() + " rpms.");
-                // Attach the assembled zip file as secondary artifact.
-                projectHelper.attachArtifact(project, "zip", output);
             }
-            // Attach the modified spec file as the primary output.
-            project.getArtifact().setFile(targetSpecFile.toFile());
         } catch (IOException e) {
-            throw new MojoExecutionException(e);
+            throw new MojoExecutionException("Unable to read groovy script " + reference, e);
+        }
+        return value;
+    }
+
+    /**
+     * Creates an instance of the (cached) compiled script with the given variables bound.
+     */
+    private Script createScript(String source, Map<String, Object> bindings) {
+        Class<? extends Script> scriptClass = GroovyScriptCache.forSession(session.getRepositorySession())
+                .get(getLog(), source, groovyPatchCacheDirectory == null ? null : groovyPatchCacheDirectory.toPath());
+        Script script = InvokerHelper.createScript(scriptClass, new Binding());
+        bindings.forEach(script::setProperty);
+        return script;
+    }
+
+    /**
+     * Computes the fingerprint of every input that affects the RPMs built by this execution.
+     */
+    private String computeFingerprint(
+            List<SpecBuild> builds,
+            String groovyScript,
+            List<String> transformerScripts,
+            String wrappedBuild,
+            String meadAlpha,
+            String meadVersion,
+            String serial,
+            List<Artifact> dependencyArtifacts) throws IOException, MojoExecutionException {
+        Path output = outputDirectory.toPath().toAbsolutePath();
+        Path dependencies = output.resolve("dependency/noarch");
+        BuildFingerprint fingerprint = new BuildFingerprint()
+                .put("plugin", mojoExecution.getMojoDescriptor().getPluginDescriptor().getId())
+                .put("project", project.getId())
+                .put("specs", builds.stream().map(SpecBuild::name).toList())
+                .put("wrappedBuild", wrappedBuild)
+                .put("meadalpha", meadAlpha)
+                .put("meadversion", meadVersion)
+                .put("serial", serial)
+                .put("groovyPatch", groovyScript)
+                .put("specTransformers", transformerScripts)
+                .put("specDefines", new TreeMap<>(specDefines))
+                .put("specVersion", specVersion)
+                .put("specRelease", specRelease)
+                .put("encoding", encoding)
+                .put("macros", macros)
+                .put("attachZip", attachZip)
+                .put("zipCompression", zipCompression)
+                .put("zipCompressionLevel", zipCompressionLevel)
+                .put("checksumAlgorithms", checksumAlgorithms)
+                .put("verifyRPMs", verifyRPMs)
+                .put("generateChecksumsFile", generateChecksumsFile)
+                .put("installRPMs", installRPMs)
+                .put("installSysroot", installSysroot)
+                .put("buildMode", buildMode)
+                .put("payloadProfile", payloadProfile)
+                .put("payloadCompression", payloadCompression)
+                .put("payloadCompressionLevel", payloadCompressionLevel)
+                .put("payloadThreads", payloadThreads)
+                .put("buildJobs", buildJobs);
+        if (changeLog != null) {
+            // The changelog entry is dated so a generated changelog changes from one day to the next.
+            fingerprint.put("changeLog", changeLog)
+                    .put("changeLogDate", changeLog.generate ? LocalDate.now() : null);
+        }
+        fingerprint.putTree(workingDirectory.toPath().toAbsolutePath(), this::isExcludedSource);
+        if (installRPMs && Files.isDirectory(dependencies)) {
+            fingerprint.putTree(dependencies, f -> false);
+        }
+        if (installRPMs) {
+            for (Artifact artifact : dependencyArtifacts) {
+                fingerprint.put("rpmDependency", artifact.toString());
+                // A release cannot change once deployed, whereas a snapshot may, so its content is included.
+                if (artifact.isSnapshot()) {
+                    try {
+                        Path rpm = resolveRPM(artifact);
+                        fingerprint.putFile(rpm.getParent(), rpm);
+                    } catch (ArtifactResolutionException e) {
+                        throw new MojoExecutionException("Unable to resolve rpm " + artifact, e);
+                    }
+                }
+            }
+        }
+        return fingerprint.compute();
+    }
+
+    /**
+     * Whether a file or directory within the working directory is not a source of the build: the build directory, the
+     * directories rpmbuild creates within it, version control metadata and IDE settings.
+     */
+    boolean isExcludedSource(Path file) {
+        Path root = workingDirectory.toPath().toAbsolutePath();
+        return file.startsWith(outputDirectory.toPath().toAbsolutePath())
+                || file.getFileName().toString().startsWith(".")
+                || RPMBUILD_DIRECTORIES.stream().anyMatch(name -> file.startsWith(root.resolve(name)));
+    }
+
+    /**
+     * Attaches the patched spec file (the first, if there are several) as the primary artifact and, if created, the zip
+     * of RPMs as a secondary artifact. The zip of a fast build is not attached, so that the standard deploy cannot
+     * publish the RPMs the deploy goal refuses to.
+     */
+    void attach(List<Path> targetSpecFiles, Path zip, int rpmCount, BuildMode mode) {
+        if (zip != null && mode == BuildMode.FAST) {
+            getLog().info("Not attaching " + zip.getFileName() + " as its rpms were built in fast mode");
+        } else if (zip != null) {
+            getLog().info("Attaching " + zip.getFileName() + " to project containing " + rpmCount + " rpms.");
+            // Attach the assembled zip file as secondary artifact.
+            projectHelper.attachArtifact(project, "zip", zip.toFile());
+        }
+        // Attach the first modified spec file as the primary output and any others classified by their name.
+        project.getArtifact().setFile(targetSpecFiles.get(0).toFile());
+        for (Path spec : targetSpecFiles.subList(1, targetSpecFiles.size())) {
+            String classifier = spec.getFileName().toString().replaceFirst("\\.spec$", "");
+            projectHelper.attachArtifact(project, "spec", classifier, spec.toFile());
         }
     }
 
@@ -0,0 +1,289 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.cpio.CpioArchiveEntry;
+import org.apache.commons.compress.archivers.cpio.CpioArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.lzma.LZMACompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Extracts the payload of an RPM in process, replicating <code>rpm2cpio | cpio -idmu</code>: directories are created
+ * as needed, modification times are preserved and existing files are replaced unconditionally. Each file is written to
+ * a temporary sibling and moved into place so that concurrent extractions never observe a partially written file.
+ * Unlike cpio, an entry that would be written outside of the root, including through a symbolic link, is refused.
+ */
+final class RPMExtractor {
+
+    /**
+     * Thrown when the payload compression or archive format cannot be handled in process.
+     */
+    static final class UnsupportedPayloadException extends IOException {
+        UnsupportedPayloadException(String message) {
+            super(message);
+        }
+    }
+
+    private static final PosixFilePermission[] PERMISSIONS = {
+            PosixFilePermission.OTHERS_EXECUTE,
+            PosixFilePermission.OTHERS_WRITE,
+            PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.GROUP_WRITE,
+            PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE,
+            PosixFilePermission.OWNER_WRITE,
+            PosixFilePermission.OWNER_READ
+    };
+
+    private final Log log;
+
+    private final Path root;
+
+    /**
+     * @param log the logger
+     * @param root the directory to extract into, equivalent to <code>cpio -D</code>
+     */
+    RPMExtractor(Log log, Path root) {
+        this.log = log;
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Extracts the payload of the RPM.
+     *
+     * @param rpm the RPM to extract
+     * @return the number of archive entries extracted
+     * @throws UnsupportedPayloadException if the payload cannot be extracted in process; nothing has been written
+     * @throws IOException if an error occurs reading the RPM or writing the files
+     */
+    int extract(Path rpm) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(rpm))) {
+            RPMPackage rpmPackage = RPMPackage.read(in);
+            if (!"cpio".equals(rpmPackage.getPayloadFormat())) {
+                throw new UnsupportedPayloadException("Unsupported payload format " + rpmPackage.getPayloadFormat());
+            }
+            try (InputStream payload = new BufferedInputStream(decompress(rpmPackage.getPayloadCompressor(), in))) {
+                // RPM uses a stripped cpio variant (magic 07070X) for packages with files over 4GiB which commons
+                // compress does not understand.
+                payload.mark(6);
+                String magic = new String(payload.readNBytes(6), StandardCharsets.US_ASCII);
+                payload.reset();
+                if (!magic.equals("070701") && !magic.equals("070702")) {
+                    throw new UnsupportedPayloadException("Unsupported cpio format with magic " + magic);
+                }
+                return extract(new CpioArchiveInputStream(payload));
+            }
+        }
+    }
+
+    private InputStream decompress(String compressor, InputStream in) throws IOException {
+        try {
+            return switch (compressor) {
+                case "gzip" -> GzipCompressorInputStream.builder()
+                        .setInputStream(in)
+                        .setDecompressConcatenated(true)
+                        .get();
+                case "bzip2" -> new BZip2CompressorInputStream(in, true);
+                case "xz" -> XZCompressorInputStream.builder()
+                        .setInputStream(in)
+                        .setDecompressConcatenated(true)
+                        .get();
+                case "lzma" -> new LZMACompressorInputStream(in);
+                case "zstd" -> new ZstdCompressorInputStream(in);
+                default -> throw new UnsupportedPayloadException("Unsupported payload compressor " + compressor);
+            };
+        } catch (LinkageError e) {
+            // The xz and zstd codecs are optional at runtime and zstd relies upon a native library.
+            throw new UnsupportedPayloadException(
+                    "Payload compressor " + compressor + " is not available (" + e + ")");
+        }
+    }
+
+    private int extract(CpioArchiveInputStream archive) throws IOException {
+        Files.createDirectories(root);
+        Path realRoot = root.toRealPath();
+        // The symbolic links extracted, which later entries must not be written through.
+        Set<Path> symbolicLinks = new HashSet<>();
+        // The directories whose real path is known to be within the root.
+        Set<Path> contained = new HashSet<>();
+        // Directory attributes are applied once their contents have been written so that a read-only directory or
+        // one with an older modification time is not altered by the files extracted into it.
+        Map<Path, CpioArchiveEntry> directories = new LinkedHashMap<>();
+        // Hard linked files carry their content only in the final link so earlier links are deferred until then.
+        Map<Long, List<Path>> pendingLinks = new HashMap<>();
+        int count = 0;
+
+        CpioArchiveEntry entry;
+        while ((entry = archive.getNextEntry()) != null) {
+            Path target = resolve(entry.getName(), realRoot, symbolicLinks, contained);
+            if (target.equals(root)) {
+                // Never change the attributes of the extraction root itself.
+                continue;
+            }
+            count++;
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+                directories.put(target, entry);
+            } else if (entry.isSymbolicLink()) {
+                String link = new String(archive.readAllBytes(), StandardCharsets.UTF_8);
+                Files.createDirectories(target.getParent());
+                Files.deleteIfExists(target);
+                try {
+                    Files.createSymbolicLink(target, Path.of(link));
+                } catch (FileAlreadyExistsException e) {
+                    // Another extraction created it concurrently; the last writer wins as it would with cpio.
+                    Files.deleteIfExists(target);
+                    Files.createSymbolicLink(target, Path.of(link));
+                }
+                symbolicLinks.add(target);
+                applyTime(target, entry);
+            } else if (entry.isRegularFile()) {
+                if (entry.getNumberOfLinks() > 1 && entry.getSize() == 0) {
+                    pendingLinks.computeIfAbsent(entry.getInode(), k -> new ArrayList<>()).add(target);
+                    continue;
+                }
+                write(archive, target, entry);
+                for (Path link : pendingLinks.getOrDefault(entry.getInode(), List.of())) {
+                    Files.deleteIfExists(link);
+                    try {
+                        Files.createLink(link, target);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        Files.copy(target, link, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                pendingLinks.remove(entry.getInode());
+            } else {
+                log.warn("Skipping unsupported cpio entry " + entry.getName() + " with mode "
+                        + Long.toOctalString(entry.getMode()));
+            }
+        }
+        // Links whose content never arrived are empty files, as with cpio.
+        for (List<Path> links : pendingLinks.values()) {
+            for (Path link : links) {
+                Files.createDirectories(link.getParent());
+                Files.deleteIfExists(link);
+                Files.createFile(link);
+            }
+        }
+        List<Map.Entry<Path, CpioArchiveEntry>> reversed = new ArrayList<>(directories.entrySet());
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            applyPermissions(reversed.get(i).getKey(), reversed.get(i).getValue());
+            applyTime(reversed.get(i).getKey(), reversed.get(i).getValue());
+        }
+        return count;
+    }
+
+    private void write(InputStream content, Path target, CpioArchiveEntry entry) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temporary = Files.createTempFile(target.getParent(), ".rpm", ".tmp");
+        try {
+            Files.copy(content, temporary, StandardCopyOption.REPLACE_EXISTING);
+            applyPermissions(temporary, entry);
+            applyTime(temporary, entry);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Resolves the entry against the root, refusing any which would be written outside of it: whether by its name or
+     * through a symbolic link, whether extracted from the archive or already present.
+     */
+    private Path resolve(String name, Path realRoot, Set<Path> symbolicLinks, Set<Path> contained) throws IOException {
+        String relative = name;
+        while (relative.startsWith("./") || relative.startsWith("/")) {
+            relative = relative.substring(relative.indexOf('/') + 1);
+        }
+        Path target = root.resolve(relative).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException("Archive entry " + name + " is outside of " + root);
+        }
+        if (target.equals(root)) {
+            return target;
+        }
+        for (Path parent = target.getParent(); !parent.equals(root); parent = parent.getParent()) {
+            if (symbolicLinks.contains(parent)) {
+                throw new IOException(
+                        "Archive entry " + name + " would be written through the symbolic link " + parent
+                                + " extracted from the same archive");
+            }
+        }
+        Path parent = target.getParent();
+        if (!contained.contains(parent)) {
+            Path existing = parent;
+            while (!Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+                existing = existing.getParent();
+            }
+            if (!existing.toRealPath().startsWith(realRoot)) {
+                throw new IOException("Archive entry " + name + " resolves to outside of " + root);
+            }
+            if (existing.equals(parent)) {
+                contained.add(parent);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Best effort; as with cpio when not running as root, failing to change the mode of an existing directory owned
+     * by another user is not an error. The setuid, setgid and sticky bits are applied along with the permissions where
+     * the filesystem provides the <code>unix</code> attribute view, and otherwise dropped.
+     */
+    private void applyPermissions(Path path, CpioArchiveEntry entry) {
+        try {
+            Files.setAttribute(path, "unix:mode", (int) (entry.getMode() & 07777));
+            return;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Only the permissions may be applied.
+        } catch (IOException e) {
+            log.debug("Unable to set the mode of " + path + ": " + e);
+            return;
+        }
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < PERMISSIONS.length; i++) {
+            if ((entry.getMode() & (1L << i)) != 0) {
+                permissions.add(PERMISSIONS[i]);
+            }
+        }
+        try {
+            Files.setPosixFilePermissions(path, permissions);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Unable to set permissions on " + path + ": " + e);
+        }
+    }
+
+    private void applyTime(Path path, CpioArchiveEntry entry) {
+        try {
+            if (Files.isSymbolicLink(path)) {
+                return;
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getTime() * 1000));
+        } catch (IOException e) {
+            log.debug("Unable to set modification time on " + path + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A parsed RPM header structure. Both the signature and the main header of an RPM use this format; it consists of an
+ * eight byte magic, an index of tag entries and a data store the entries point into. The raw bytes are retained so that
+ * header digests may be verified. See <a href="https://rpm-software-management.github.io/rpm/manual/format.html">the
+ * RPM file format</a>.
+ */
+final class RPMHeader {
+
+    static final int TAG_SHA1HEADER = 269;
+    static final int TAG_SHA256HEADER = 273;
+
+    static final int SIGTAG_LONGSIZE = 270;
+    static final int SIGTAG_SIZE = 1000;
+    static final int SIGTAG_MD5 = 1004;
+    static final int SIGTAG_PAYLOADSIZE = 1007;
+
+    static final int TAG_NAME = 1000;
+    static final int TAG_VERSION = 1001;
+    static final int TAG_RELEASE = 1002;
+    static final int TAG_EPOCH = 1003;
+    static final int TAG_SUMMARY = 1004;
+    static final int TAG_DESCRIPTION = 1005;
+    static final int TAG_BUILDTIME = 1006;
+    static final int TAG_BUILDHOST = 1007;
+    static final int TAG_SIZE = 1009;
+    static final int TAG_VENDOR = 1011;
+    static final int TAG_LICENSE = 1014;
+    static final int TAG_PACKAGER = 1015;
+    static final int TAG_GROUP = 1016;
+    static final int TAG_URL = 1020;
+    static final int TAG_ARCH = 1022;
+    static final int TAG_FILEMODES = 1030;
+    static final int TAG_FILEFLAGS = 1037;
+    static final int TAG_SOURCERPM = 1044;
+    static final int TAG_ARCHIVESIZE = 1046;
+    static final int TAG_PROVIDENAME = 1047;
+    static final int TAG_REQUIREFLAGS = 1048;
+    static final int TAG_REQUIRENAME = 1049;
+    static final int TAG_REQUIREVERSION = 1050;
+    static final int TAG_CONFLICTFLAGS = 1053;
+    static final int TAG_CONFLICTNAME = 1054;
+    static final int TAG_CONFLICTVERSION = 1055;
+    static final int TAG_CHANGELOGTIME = 1080;
+    static final int TAG_CHANGELOGNAME = 1081;
+    static final int TAG_CHANGELOGTEXT = 1082;
+    static final int TAG_OBSOLETENAME = 1090;
+    static final int TAG_PROVIDEFLAGS = 1112;
+    static final int TAG_PROVIDEVERSION = 1113;
+    static final int TAG_OBSOLETEFLAGS = 1114;
+    static final int TAG_OBSOLETEVERSION = 1115;
+    static final int TAG_DIRINDEXES = 1116;
+    static final int TAG_BASENAMES = 1117;
+    static final int TAG_DIRNAMES = 1118;
+    static final int TAG_PAYLOADFORMAT = 1124;
+    static final int TAG_PAYLOADCOMPRESSOR = 1125;
+    static final int TAG_RECOMMENDNAME = 5046;
+    static final int TAG_RECOMMENDVERSION = 5047;
+    static final int TAG_RECOMMENDFLAGS = 5048;
+    static final int TAG_SUGGESTNAME = 5049;
+    static final int TAG_SUGGESTVERSION = 5050;
+    static final int TAG_SUGGESTFLAGS = 5051;
+    static final int TAG_SUPPLEMENTNAME = 5052;
+    static final int TAG_SUPPLEMENTVERSION = 5053;
+    static final int TAG_SUPPLEMENTFLAGS = 5054;
+    static final int TAG_ENHANCENAME = 5055;
+    static final int TAG_ENHANCEVERSION = 5056;
+    static final int TAG_ENHANCEFLAGS = 5057;
+    static final int TAG_PAYLOADDIGEST = 5092;
+    static final int TAG_PAYLOADDIGESTALGO = 5093;
+
+    private static final byte[] MAGIC = { (byte) 0x8e, (byte) 0xad, (byte) 0xe8, 0x01 };
+
+    private static final int TYPE_CHAR = 1;
+    private static final int TYPE_INT8 = 2;
+    private static final int TYPE_INT16 = 3;
+    private static final int TYPE_INT32 = 4;
+    private static final int TYPE_INT64 = 5;
+    private static final int TYPE_STRING = 6;
+    private static final int TYPE_BIN = 7;
+    private static final int TYPE_STRING_ARRAY = 8;
+    private static final int TYPE_I18NSTRING = 9;
+
+    private record Entry(int type, int offset, int count) {
+    }
+
+    private final Map<Integer, Entry> entries;
+
+    private final ByteBuffer store;
+
+    private final byte[] raw;
+
+    private RPMHeader(Map<Integer, Entry> entries, ByteBuffer store, byte[] raw) {
+        this.entries = Collections.unmodifiableMap(entries);
+        this.store = store;
+        this.raw = raw;
+    }
+
+    /**
+     * Reads a single header structure from the stream which must be positioned at the header magic.
+     *
+     * @param in the stream to read from
+     * @return the parsed header
+     * @throws IOException if the stream does not contain a valid header
+     */
+    static RPMHeader read(DataInputStream in) throws IOException {
+        byte[] intro = new byte[16];
+        in.readFully(intro);
+        if (!Arrays.equals(intro, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            throw new IOException("Invalid RPM header magic");
+        }
+        ByteBuffer introBuffer = ByteBuffer.wrap(intro);
+        int indexCount = introBuffer.getInt(8);
+        int storeSize = introBuffer.getInt(12);
+        if (indexCount < 0 || storeSize < 0 || indexCount > 0xffff || storeSize > 0x0fffffff) {
+            throw new IOException("Corrupt RPM header (" + indexCount + " entries, " + storeSize + " bytes)");
+        }
+        byte[] raw = new byte[intro.length + indexCount * 16 + storeSize];
+        System.arraycopy(intro, 0, raw, 0, intro.length);
+        in.readFully(raw, intro.length, raw.length - intro.length);
+
+        ByteBuffer index = ByteBuffer.wrap(raw, intro.length, indexCount * 16);
+        Map<Integer, Entry> entries = new HashMap<>();
+        for (int i = 0; i < indexCount; i++) {
+            int tag = index.getInt();
+            int type = index.getInt();
+            int offset = index.getInt();
+            int count = index.getInt();
+            // Each value occupies at least width(type) bytes, which bounds the count before anything is allocated.
+            if (offset < 0 || offset > storeSize || count < 0 || (long) count * width(type) > storeSize - offset) {
+                throw new IOException("Corrupt RPM header entry for tag " + tag);
+            }
+            entries.put(tag, new Entry(type, offset, count));
+        }
+        ByteBuffer store = ByteBuffer.wrap(raw, intro.length + indexCount * 16, storeSize).slice();
+        return new RPMHeader(entries, store, raw);
+    }
+
+    /**
+     * The size of the header structure in bytes, including its magic and index.
+     */
+    int size() {
+        return raw.length;
+    }
+
+    /**
+     * The size of the data store; used to compute the alignment padding following the signature header.
+     */
+    int storeSize() {
+        return store.capacity();
+    }
+
+    /**
+     * The raw header bytes exactly as read from the file, beginning with the header magic.
+     */
+    byte[] raw() {
+        return raw;
+    }
+
+    boolean hasTag(int tag) {
+        return entries.containsKey(tag);
+    }
+
+    /**
+     * Returns the first value of a string tag or null if the tag is absent.
+     *
+     * @throws IOException if the value lies outside the data store or the tag is not a string
+     */
+    String getString(int tag) throws IOException {
+        Entry entry = entries.get(tag);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.type != TYPE_STRING && entry.type != TYPE_I18NSTRING && entry.type != TYPE_STRING_ARRAY) {
+            throw new IOException("Corrupt RPM header: tag " + tag + " is not a string (type " + entry.type + ")");
+        }
+        return readStrings(tag, entry.offset, 1)[0];
+    }
+
+    /**
+     * Returns the values of a string or string array tag, or none if the tag is absent.
+     *
+     * @throws IOException if a value lies outside the data store or the tag is not a string
+     */
+    String[] getStringArray(int tag) throws IOException {
+        Entry entry = entries.get(tag);
+        if (entry == null) {
+            return new String[0];
+        }
+        if (entry.type == TYPE_STRING) {
+            return readStrings(tag, entry.offset, 1);
+        } else if (entry.type != TYPE_STRING_ARRAY && entry.type != TYPE_I18NSTRING) {
+            throw new IOException(
+                    "Corrupt RPM header: tag " + tag + " is not a string array (type " + entry.type + ")");
+        }
+        return readStrings(tag, entry.offset, entry.count);
+    }
+
+    /**
+     * Returns integer values of any width as longs; 32 bit values are treated as unsigned as they are in RPM itself.
+     *
+     * @throws IOException if a value lies outside the data store or the tag is not numeric
+     */
+    long[] getNumberArray(int tag) throws IOException {
+        Entry entry = entries.get(tag);
+        if (entry == null) {
+            return new long[0];
+        }
+        if (entry.type < TYPE_CHAR || entry.type > TYPE_INT64) {
+            throw new IOException("Corrupt RPM header: tag " + tag + " is not numeric (type " + entry.type + ")");
+        }
+        checkBounds(tag, entry.offset, (long) entry.count * width(entry.type));
+        long[] result = new long[entry.count];
+        for (int i = 0; i < entry.count; i++) {
+            switch (entry.type) {
+                case TYPE_CHAR, TYPE_INT8 -> result[i] = store.get(entry.offset + i) & 0xffL;
+                case TYPE_INT16 -> result[i] = store.getShort(entry.offset + i * 2) & 0xffffL;
+                case TYPE_INT32 -> result[i] = store.getInt(entry.offset + i * 4) & 0xffffffffL;
+                default -> result[i] = store.getLong(entry.offset + i * 8);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first value of a numeric tag or the default if the tag is absent.
+     *
+     * @throws IOException if the value lies outside the data store or the tag is not numeric
+     */
+    long getNumber(int tag, long defaultValue) throws IOException {
+        long[] values = getNumberArray(tag);
+        return values.length == 0 ? defaultValue : values[0];
+    }
+
+    /**
+     * Returns the value of a binary tag or null if the tag is absent.
+     *
+     * @throws IOException if the value lies outside the data store or the tag is not binary
+     */
+    byte[] getBinary(int tag) throws IOException {
+        Entry entry = entries.get(tag);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.type != TYPE_BIN) {
+            throw new IOException("Corrupt RPM header: tag " + tag + " is not binary (type " + entry.type + ")");
+        }
+        checkBounds(tag, entry.offset, entry.count);
+        byte[] result = new byte[entry.count];
+        store.get(entry.offset, result);
+        return result;
+    }
+
+    /**
+     * Fails unless the given number of bytes from the offset lie within the data store. The index entries are checked
+     * as they are read, but a corrupt header must never surface as an unchecked exception from the buffer.
+     */
+    private void checkBounds(int tag, int offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > store.capacity()) {
+            throw new IOException("Corrupt RPM header: tag " + tag + " lies outside the data store");
+        }
+    }
+
+    /**
+     * The minimum size in bytes of a single value of the type.
+     */
+    private static int width(int type) {
+        return switch (type) {
+            case TYPE_INT16 -> 2;
+            case TYPE_INT32 -> 4;
+            case TYPE_INT64 -> 8;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Reads consecutive null terminated strings, each of which must begin and end within the data store.
+     */
+    private String[] readStrings(int tag, int offset, int count) throws IOException {
+        String[] result = new String[count];
+        int position = offset;
+        for (int i = 0; i < count; i++) {
+            if (position < 0 || position >= store.capacity()) {
+                throw new IOException("Corrupt RPM header: tag " + tag + " lies outside the data store");
+            }
+            int end = position;
+            while (end < store.capacity() && store.get(end) != 0) {
+                end++;
+            }
+            if (end == store.capacity()) {
+                throw new IOException("Corrupt RPM header: tag " + tag + " has an unterminated string");
+            }
+            byte[] value = new byte[end - position];
+            store.get(position, value);
+            result[i] = new String(value, StandardCharsets.UTF_8);
+            position = end + 1;
+        }
+        return result;
+    }
+}
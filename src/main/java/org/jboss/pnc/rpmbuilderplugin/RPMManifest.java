@@ -0,0 +1,195 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.io.FilenameUtils;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+/**
+ * A machine-readable record of the RPMs produced by the package goal, written to
+ * <code>${project.build.directory}/rpm-manifest.json</code>. Later steps, such as the zip and deploy, read this rather
+ * than walking the build directory.
+ */
+final class RPMManifest {
+
+    static final String FILENAME = "rpm-manifest.json";
+
+    static final List<String> DEFAULT_ALGORITHMS = List.of("SHA-1", "MD5", "SHA-256");
+
+    /**
+     * A single RPM within the manifest.
+     *
+     * @param path the path relative to the build directory, using forward slashes
+     * @param size the size in bytes
+     * @param modified the last modified time in milliseconds since the epoch, or -1 if not recorded
+     * @param arch the architecture, or <code>src</code> for a source RPM
+     * @param checksums hex encoded checksums keyed by algorithm name
+     */
+    record Entry(String path, long size, long modified, String arch, Map<String, String> checksums) {
+
+        /**
+         * Whether the file is still the one recorded, judged by its size and last modified time, so that its
+         * recorded checksums may be trusted without reading it.
+         */
+        boolean isUnchanged(Path file) throws IOException {
+            return modified >= 0 && Files.isRegularFile(file) && Files.size(file) == size
+                    && Files.getLastModifiedTime(file).toMillis() == modified;
+        }
+    }
+
+    private final String project;
+
+    private final String mode;
+
+    private final boolean verified;
+
+    private final List<Entry> rpms;
+
+    RPMManifest(String project, String mode, boolean verified, List<Entry> rpms) {
+        this.project = project;
+        this.mode = mode;
+        this.verified = verified;
+        this.rpms = List.copyOf(rpms);
+    }
+
+    /**
+     * Creates the manifest. Any RPM without precomputed checksums is read once to compute every algorithm.
+     *
+     * @param project the project identifier
+     * @param mode the build mode the RPMs were built with
+     * @param verified whether the RPMs were verified as their checksums were computed
+     * @param outputDirectory the build directory the RPM paths are relative to
+     * @param files the RPMs
+     * @param algorithms the checksum algorithms
+     * @param precomputed checksums already computed, for example while creating the zip, keyed by RPM
+     * @return the manifest
+     * @throws IOException if an RPM cannot be read
+     */
+    static RPMManifest create(
+            String project,
+            BuildMode mode,
+            boolean verified,
+            Path outputDirectory,
+            List<File> files,
+            List<String> algorithms,
+            Map<File, Map<String, String>> precomputed) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (File file : files) {
+            Map<String, String> checksums = precomputed.get(file);
+            if (checksums == null || !checksums.keySet().containsAll(algorithms)) {
+                checksums = Checksums.compute(file.toPath(), algorithms);
+            }
+            entries.add(
+                    new Entry(
+                            FilenameUtils.normalize(outputDirectory.relativize(file.toPath()).toString(), true),
+                            file.length(),
+                            Files.getLastModifiedTime(file.toPath()).toMillis(),
+                            readArch(file.toPath()),
+                            checksums));
+        }
+        return new RPMManifest(project, mode.getName(), verified, entries);
+    }
+
+    private static String readArch(Path rpm) {
+        try {
+            return RPMPackage.read(rpm).getArch();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a previously written manifest.
+     *
+     * @param file the manifest file
+     * @return the manifest, or empty if the file does not exist
+     * @throws IOException if the file cannot be read or parsed
+     */
+    @SuppressWarnings("unchecked")
+    static Optional<RPMManifest> read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        Map<String, Object> json;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            json = (Map<String, Object>) new JsonSlurper().parse(reader);
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to parse " + file, e);
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (Map<String, Object> rpm : (List<Map<String, Object>>) json.get("rpms")) {
+            entries.add(
+                    new Entry(
+                            (String) rpm.get("path"),
+                            ((Number) rpm.get("size")).longValue(),
+                            // Manifests written before the time was recorded are never trusted to be unchanged.
+                            ((Number) rpm.getOrDefault("modified", -1)).longValue(),
+                            (String) rpm.get("arch"),
+                            new LinkedHashMap<>((Map<String, String>) rpm.get("checksums"))));
+        }
+        // Manifests written before the build mode was recorded are of complete builds.
+        String mode = (String) json.getOrDefault("mode", BuildMode.ALL.getName());
+        boolean verified = Boolean.TRUE.equals(json.get("verified"));
+        return Optional.of(new RPMManifest((String) json.get("project"), mode, verified, entries));
+    }
+
+    void write(Path file) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("project", project);
+        json.put("mode", mode);
+        json.put("verified", verified);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (Entry rpm : rpms) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("path", rpm.path());
+            entry.put("size", rpm.size());
+            entry.put("modified", rpm.modified());
+            entry.put("arch", rpm.arch());
+            entry.put("checksums", rpm.checksums());
+            entries.add(entry);
+        }
+        json.put("rpms", entries);
+        Files.writeString(file, JsonOutput.prettyPrint(JsonOutput.toJson(json)), StandardCharsets.UTF_8);
+    }
+
+    String getProject() {
+        return project;
+    }
+
+    /**
+     * The name of the build mode the RPMs were built with.
+     */
+    String getMode() {
+        return mode;
+    }
+
+    /**
+     * Whether the RPMs were verified by the package goal when their checksums were computed.
+     */
+    boolean isVerified() {
+        return verified;
+    }
+
+    List<Entry> getRPMs() {
+        return rpms;
+    }
+
+    /**
+     * Resolves the RPMs against the build directory.
+     */
+    List<File> getFiles(Path outputDirectory) {
+        return rpms.stream().map(rpm -> outputDirectory.resolve(rpm.path()).toFile()).toList();
+    }
+}
@@ -0,0 +1,131 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * The metadata sections of an RPM file: the lead, the signature header and the main header. Reading stops at the start
+ * of the payload so that callers that only need the metadata never touch the (usually much larger) payload.
+ */
+final class RPMPackage {
+
+    static final int LEAD_SIZE = 96;
+
+    private static final int LEAD_MAGIC = 0xedabeedb;
+
+    private static final Set<String> COMPRESSED_PAYLOADS = Set.of("gzip", "bzip2", "xz", "lzma", "zstd");
+
+    private final RPMHeader signature;
+
+    private final RPMHeader header;
+
+    private RPMPackage(RPMHeader signature, RPMHeader header) {
+        this.signature = signature;
+        this.header = header;
+    }
+
+    /**
+     * Reads the lead, signature and header from the stream, leaving it positioned at the start of the payload.
+     *
+     * @param in the stream to read from
+     * @return the parsed package metadata
+     * @throws IOException if the stream is not a valid RPM
+     */
+    static RPMPackage read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] lead = new byte[LEAD_SIZE];
+        data.readFully(lead);
+        if (ByteBuffer.wrap(lead).getInt() != LEAD_MAGIC) {
+            throw new IOException("Invalid RPM lead magic");
+        }
+        RPMHeader signature = RPMHeader.read(data);
+        // The signature header is padded so that the main header starts on an eight byte boundary.
+        data.skipNBytes((8 - (signature.storeSize() % 8)) % 8);
+        RPMHeader header = RPMHeader.read(data);
+        return new RPMPackage(signature, header);
+    }
+
+    /**
+     * Reads the package metadata from the given file without reading the payload.
+     */
+    static RPMPackage read(Path rpm) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(rpm))) {
+            return read(in);
+        }
+    }
+
+    RPMHeader getSignature() {
+        return signature;
+    }
+
+    RPMHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * The offset of the main header from the start of the file.
+     */
+    long getHeaderOffset() {
+        return LEAD_SIZE + signature.size() + (8 - (signature.storeSize() % 8)) % 8;
+    }
+
+    /**
+     * The offset of the payload from the start of the file.
+     */
+    long getPayloadOffset() {
+        return getHeaderOffset() + header.size();
+    }
+
+    /**
+     * The payload compressor; RPM treats a missing tag as gzip.
+     */
+    String getPayloadCompressor() throws IOException {
+        String compressor = header.getString(RPMHeader.TAG_PAYLOADCOMPRESSOR);
+        return compressor == null ? "gzip" : compressor;
+    }
+
+    /**
+     * The payload archive format; RPM treats a missing tag as cpio.
+     */
+    String getPayloadFormat() throws IOException {
+        String format = header.getString(RPMHeader.TAG_PAYLOADFORMAT);
+        return format == null ? "cpio" : format;
+    }
+
+    boolean isPayloadCompressed() throws IOException {
+        return COMPRESSED_PAYLOADS.contains(getPayloadCompressor());
+    }
+
+    boolean isSourcePackage() {
+        return !header.hasTag(RPMHeader.TAG_SOURCERPM);
+    }
+
+    String getName() throws IOException {
+        return header.getString(RPMHeader.TAG_NAME);
+    }
+
+    String getVersion() throws IOException {
+        return header.getString(RPMHeader.TAG_VERSION);
+    }
+
+    String getRelease() throws IOException {
+        return header.getString(RPMHeader.TAG_RELEASE);
+    }
+
+    long getEpoch() throws IOException {
+        return header.getNumber(RPMHeader.TAG_EPOCH, 0);
+    }
+
+    /**
+     * The package architecture, reporting {@code src} for source packages as rpm itself does.
+     */
+    String getArch() throws IOException {
+        return isSourcePackage() ? "src" : header.getString(RPMHeader.TAG_ARCH);
+    }
+}
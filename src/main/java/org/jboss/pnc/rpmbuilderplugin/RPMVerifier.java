@@ -0,0 +1,364 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * Verifies the integrity of an RPM, as <code>rpm -K --nosignature</code> does, while it is read: the lead, the size
+ * and MD5 digest recorded in the signature, the SHA-256 (or, for older RPMs, SHA-1) digest of the header and the digest
+ * of the payload. As the verification is applied to a stream it may share the single read of each RPM with
+ * checksumming and archiving. The signatures themselves are not verified.
+ */
+final class RPMVerifier {
+
+    /**
+     * Thrown when an RPM fails verification.
+     */
+    static final class VerificationException extends IOException {
+        VerificationException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int LEAD_SIGNATURE_TYPE_OFFSET = 78;
+
+    /**
+     * The only signature type in use, a header structure aligned to eight bytes.
+     */
+    private static final int HEADER_SIGNATURE = 5;
+
+    private static final int HEADER_INTRO_SIZE = 16;
+
+    /**
+     * The hash algorithms of <code>PAYLOADDIGESTALGO</code>, numbered as in OpenPGP.
+     */
+    private static final Map<Long, String> PAYLOAD_ALGORITHMS = Map.of(
+            1L,
+            "MD5",
+            2L,
+            "SHA-1",
+            8L,
+            "SHA-256",
+            9L,
+            "SHA-384",
+            10L,
+            "SHA-512",
+            11L,
+            "SHA-224");
+
+    private final String name;
+
+    /**
+     * The lead and headers, buffered until the header is complete; null once it is.
+     */
+    private ByteArrayOutputStream metadata = new ByteArrayOutputStream(8192);
+
+    /**
+     * The size of the metadata needed to advance to the next stage: 0 reads the lead and signature size, 1 the header
+     * size and 2 the complete header.
+     */
+    private long metadataSize = RPMPackage.LEAD_SIZE + HEADER_INTRO_SIZE;
+
+    private int stage;
+
+    private RPMPackage rpmPackage;
+
+    private MessageDigest md5;
+
+    private MessageDigest payloadDigest;
+
+    private String expectedPayloadDigest;
+
+    private long size;
+
+    private RPMVerifier(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Wraps a stream of an RPM such that it is verified as it is read. Reaching the end of the stream throws a
+     * {@link VerificationException} if the RPM is invalid.
+     *
+     * @param in the stream, positioned at the start of the RPM
+     * @param name the name of the RPM, used in any failure
+     * @return the verifying stream
+     */
+    static InputStream verifying(InputStream in, String name) {
+        RPMVerifier verifier = new RPMVerifier(name);
+        return new FilterInputStream(in) {
+            private boolean complete;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    complete();
+                } else {
+                    verifier.update(new byte[] { (byte) b }, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read == -1) {
+                    complete();
+                } else {
+                    verifier.update(buffer, offset, read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // Skipped bytes must still be verified.
+                byte[] buffer = new byte[8192];
+                long skipped = 0;
+                int read;
+                while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1) {
+                    skipped += read;
+                }
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            private void complete() throws IOException {
+                if (!complete) {
+                    complete = true;
+                    verifier.complete();
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads and verifies an RPM, computing its checksums in the same pass.
+     *
+     * @param rpm the RPM
+     * @param algorithms the checksum algorithms
+     * @return hex encoded checksums keyed by algorithm name
+     * @throws VerificationException if the RPM is invalid
+     * @throws IOException if the RPM cannot be read
+     */
+    static Map<String, String> verify(Path rpm, List<String> algorithms) throws IOException {
+        AtomicReference<Map<String, String>> checksums = new AtomicReference<>();
+        try (InputStream in = Checksums.digesting(
+                verifying(Files.newInputStream(rpm), rpm.getFileName().toString()),
+                algorithms,
+                checksums::set)) {
+            in.transferTo(NullOutputStream.INSTANCE);
+        }
+        return checksums.get();
+    }
+
+    /**
+     * Verifies several RPMs concurrently, computing their checksums in the same pass. Every RPM is verified before any
+     * failure is reported.
+     *
+     * @param rpms the RPMs
+     * @param algorithms the checksum algorithms
+     * @param threads the number of RPMs to verify at once
+     * @param onChecksums receives the checksums of each RPM; it may be called concurrently
+     * @throws VerificationException if any RPM is invalid
+     * @throws IOException if an RPM cannot be read
+     */
+    static void verifyAll(
+            List<File> rpms,
+            List<String> algorithms,
+            int threads,
+            BiConsumer<File, Map<String, String>> onChecksums) throws IOException {
+        if (rpms.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, rpms.size())));
+        try {
+            Map<File, Future<?>> verifications = new LinkedHashMap<>();
+            for (File rpm : rpms) {
+                verifications.put(
+                        rpm,
+                        executor.submit(() -> {
+                            onChecksums.accept(rpm, verify(rpm.toPath(), algorithms));
+                            return null;
+                        }));
+            }
+            List<String> failures = new ArrayList<>();
+            IOException error = null;
+            for (Map.Entry<File, Future<?>> verification : verifications.entrySet()) {
+                try {
+                    verification.getValue().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof VerificationException) {
+                        failures.add(e.getCause().getMessage());
+                    } else if (error == null) {
+                        error = new IOException(
+                                "Unable to verify " + verification.getKey() + ": " + e.getCause(),
+                                e.getCause());
+                    }
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new VerificationException(failures.size() + " rpms failed verification: " + failures);
+            }
+            if (error != null) {
+                throw error;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying rpms", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void update(byte[] buffer, int offset, int length) throws IOException {
+        if (metadata == null) {
+            updatePayload(buffer, offset, length);
+            return;
+        }
+        metadata.write(buffer, offset, length);
+        while (metadata != null && metadata.size() >= metadataSize) {
+            advance();
+        }
+    }
+
+    /**
+     * Determines, as enough of the metadata arrives, where the header ends and, once it has, parses and digests it.
+     */
+    private void advance() throws IOException {
+        byte[] bytes = metadata.toByteArray();
+        if (stage < 2) {
+            if (stage == 0) {
+                int type = ByteBuffer.wrap(bytes).getShort(LEAD_SIGNATURE_TYPE_OFFSET);
+                if (type != HEADER_SIGNATURE) {
+                    throw failure("unsupported signature type " + type + " in the lead");
+                }
+                int signatureSize = structureSize(bytes, RPMPackage.LEAD_SIZE);
+                int signatureStore = ByteBuffer.wrap(bytes).getInt(RPMPackage.LEAD_SIZE + 12);
+                // The signature is padded so that the header starts on an eight byte boundary.
+                metadataSize = RPMPackage.LEAD_SIZE + signatureSize + (8 - signatureStore % 8) % 8
+                        + HEADER_INTRO_SIZE;
+            } else {
+                metadataSize += structureSize(bytes, (int) metadataSize - HEADER_INTRO_SIZE) - HEADER_INTRO_SIZE;
+            }
+            stage++;
+            return;
+        }
+
+        try {
+            rpmPackage = RPMPackage.read(new ByteArrayInputStream(bytes, 0, (int) metadataSize));
+        } catch (IOException e) {
+            throw failure(e.getMessage());
+        }
+        metadata = null;
+        RPMHeader signature = rpmPackage.getSignature();
+        RPMHeader header = rpmPackage.getHeader();
+        String sha256 = signature.getString(RPMHeader.TAG_SHA256HEADER);
+        String sha1 = signature.getString(RPMHeader.TAG_SHA1HEADER);
+        if (sha256 != null) {
+            check("header SHA-256 digest", sha256, digest("SHA-256", header.raw()));
+        } else if (sha1 != null) {
+            check("header SHA-1 digest", sha1, digest("SHA-1", header.raw()));
+        }
+        if (signature.hasTag(RPMHeader.SIGTAG_MD5)) {
+            md5 = Checksums.newDigest("MD5");
+            md5.update(header.raw());
+        }
+        String[] payload = header.getStringArray(RPMHeader.TAG_PAYLOADDIGEST);
+        if (payload != null && payload.length > 0) {
+            long algorithm = header.getNumber(RPMHeader.TAG_PAYLOADDIGESTALGO, 8);
+            String algorithmName = PAYLOAD_ALGORITHMS.get(algorithm);
+            if (algorithmName == null) {
+                throw failure("unsupported payload digest algorithm " + algorithm);
+            }
+            payloadDigest = Checksums.newDigest(algorithmName);
+            expectedPayloadDigest = payload[0];
+        }
+        if (sha256 == null && sha1 == null && md5 == null && payloadDigest == null) {
+            throw failure("no header or payload digest");
+        }
+        size = header.size();
+        updatePayload(bytes, (int) metadataSize, bytes.length - (int) metadataSize);
+    }
+
+    /**
+     * Returns the size of the header structure starting at the offset, from its index count and store size.
+     */
+    private int structureSize(byte[] bytes, int offset) throws IOException {
+        ByteBuffer intro = ByteBuffer.wrap(bytes, offset, HEADER_INTRO_SIZE);
+        int indexCount = intro.getInt(offset + 8);
+        int storeSize = intro.getInt(offset + 12);
+        if (indexCount < 0 || storeSize < 0 || indexCount > 0xffff || storeSize > 0x0fffffff) {
+            throw failure("corrupt header (" + indexCount + " entries, " + storeSize + " bytes)");
+        }
+        return HEADER_INTRO_SIZE + indexCount * 16 + storeSize;
+    }
+
+    private void updatePayload(byte[] buffer, int offset, int length) {
+        size += length;
+        if (md5 != null) {
+            md5.update(buffer, offset, length);
+        }
+        if (payloadDigest != null) {
+            payloadDigest.update(buffer, offset, length);
+        }
+    }
+
+    private void complete() throws IOException {
+        if (metadata != null) {
+            throw failure("truncated before the end of the header");
+        }
+        RPMHeader signature = rpmPackage.getSignature();
+        // The size of the header and payload, recorded as a 64 bit value if it does not fit in 32 bits.
+        long expectedSize = signature
+                .getNumber(RPMHeader.SIGTAG_LONGSIZE, signature.getNumber(RPMHeader.SIGTAG_SIZE, -1));
+        if (expectedSize >= 0 && expectedSize != size) {
+            throw failure("the header and payload are " + size + " bytes rather than " + expectedSize);
+        }
+        if (md5 != null) {
+            check("MD5 digest", Checksums.toHex(signature.getBinary(RPMHeader.SIGTAG_MD5)), md5.digest());
+        }
+        if (payloadDigest != null) {
+            check("payload digest", expectedPayloadDigest, payloadDigest.digest());
+        }
+    }
+
+    private static byte[] digest(String algorithm, byte[] bytes) {
+        return Checksums.newDigest(algorithm).digest(bytes);
+    }
+
+    private void check(String digest, String expected, byte[] actual) throws VerificationException {
+        String hex = Checksums.toHex(actual);
+        if (!hex.equalsIgnoreCase(expected)) {
+            throw failure(digest + " is " + hex + " rather than " + expected);
+        }
+    }
+
+    private VerificationException failure(String reason) {
+        return new VerificationException(name + " is corrupt: " + reason);
+    }
+}
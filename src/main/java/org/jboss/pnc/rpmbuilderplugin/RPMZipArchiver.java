@@ -0,0 +1,193 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.DefaultBackingStoreSupplier;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Assembles the RPMs into a zip. RPM payloads are almost always already compressed so, by default, those entries are
+ * stored as is while any remaining entries are deflated in parallel using a {@link ParallelScatterZipCreator}.
+ * Checksums of each file may be computed while it is read so that the files need not be read again.
+ */
+final class RPMZipArchiver {
+
+    /**
+     * How entries are compressed within the zip.
+     */
+    enum Compression {
+        /**
+         * Store entries whose RPM payload is already compressed and deflate everything else.
+         */
+        AUTO,
+        /**
+         * Deflate every entry.
+         */
+        DEFLATE,
+        /**
+         * Store every entry without compression.
+         */
+        STORE;
+
+        static Compression fromString(String value) throws MojoExecutionException {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(
+                        "Unknown zip compression '" + value + "'; expected one of auto, deflate or store");
+            }
+        }
+    }
+
+    private final Log log;
+
+    private final Compression compression;
+
+    private final int level;
+
+    private final int threads;
+
+    /**
+     * @param log the logger
+     * @param compression the entry compression strategy
+     * @param level the deflate compression level (-1 to 9)
+     * @param threads the number of deflating threads; zero or less uses the number of available processors
+     */
+    RPMZipArchiver(Log log, Compression compression, int level, int threads) {
+        this.log = log;
+        this.compression = compression;
+        this.level = level;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Writes the files into the zip, naming each entry by its path relative to the base directory.
+     *
+     * @param baseDirectory the directory entry names are relative to
+     * @param files the files to archive
+     * @param output the zip to create
+     * @param comment the comment of the zip
+     * @param algorithms the checksum algorithms to compute for each file while it is read
+     * @param verify whether to verify each file, being an RPM; stored entries are verified concurrently before they
+     *        are written and deflated entries while they are read
+     * @param onChecksums receives the checksums of each file; it may be called concurrently
+     * @throws RPMVerifier.VerificationException if an RPM fails verification
+     * @throws IOException if an error occurs reading a file or writing the zip
+     */
+    void archive(
+            Path baseDirectory,
+            List<File> files,
+            Path output,
+            String comment,
+            List<String> algorithms,
+            boolean verify,
+            BiConsumer<File, Map<String, String>> onChecksums) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ZipArchiveOutputStream archive = new ZipArchiveOutputStream(output)) {
+            archive.setComment(comment);
+            // Scatter files are kept next to the zip rather than in the (possibly small) system temporary directory.
+            ParallelScatterZipCreator creator = new ParallelScatterZipCreator(
+                    executor,
+                    new DefaultBackingStoreSupplier(output.toAbsolutePath().getParent()),
+                    level);
+            List<File> stored = new ArrayList<>();
+            for (File file : files) {
+                if (isStored(file)) {
+                    stored.add(file);
+                    continue;
+                }
+                ZipArchiveEntry entry = new ZipArchiveEntry(file, entryName(baseDirectory, file));
+                entry.setMethod(ZipEntry.DEFLATED);
+                creator.addArchiveEntry(entry, () -> {
+                    try {
+                        return open(file, algorithms, verify, onChecksums);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            // Verifying the stored entries as they are written would verify them one at a time on this thread, so
+            // they are verified, and checksummed, concurrently beforehand while the other entries are deflated.
+            if (verify) {
+                RPMVerifier.verifyAll(stored, algorithms, threads, onChecksums);
+            }
+            for (File file : stored) {
+                // The output is seekable so stored entries may be streamed directly while other entries are being
+                // deflated in the background.
+                ZipArchiveEntry entry = new ZipArchiveEntry(file, entryName(baseDirectory, file));
+                entry.setMethod(ZipEntry.STORED);
+                archive.putArchiveEntry(entry);
+                try (InputStream in = verify ? Files.newInputStream(file.toPath())
+                        : open(file, algorithms, false, onChecksums)) {
+                    IOUtils.copy(in, archive);
+                }
+                archive.closeArchiveEntry();
+            }
+            creator.writeTo(archive);
+            log.debug(
+                    "Zip " + output.getFileName() + " has " + stored.size() + " stored and "
+                            + (files.size() - stored.size()) + " deflated entries using " + threads + " threads");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating " + output, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RPMVerifier.VerificationException verification) {
+                throw verification;
+            }
+            throw new IOException("Unable to create " + output, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String entryName(Path baseDirectory, File file) {
+        return FilenameUtils.normalize(baseDirectory.relativize(file.toPath()).toString(), true);
+    }
+
+    private static InputStream open(
+            File file,
+            List<String> algorithms,
+            boolean verify,
+            BiConsumer<File, Map<String, String>> onChecksums) throws IOException {
+        InputStream in = Files.newInputStream(file.toPath());
+        return Checksums.digesting(
+                verify ? RPMVerifier.verifying(in, file.getName()) : in,
+                algorithms,
+                checksums -> onChecksums.accept(file, checksums));
+    }
+
+    private boolean isStored(File file) {
+        return switch (compression) {
+            case STORE -> true;
+            case DEFLATE -> false;
+            case AUTO -> {
+                try {
+                    yield RPMPackage.read(file.toPath()).isPayloadCompressed();
+                } catch (IOException e) {
+                    log.debug("Unable to read RPM header from " + file + "; it will be deflated: " + e.getMessage());
+                    yield false;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,144 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.impl.RepositoryConnectorProvider;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.spi.connector.ArtifactDownload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.spi.connector.checksum.ChecksumAlgorithmFactory;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.NoRepositoryConnectorException;
+
+/**
+ * Determines which artifacts are already deployed, unchanged, by fetching the checksum files alongside them in the
+ * repository and comparing those with the local checksums. The checksum files are fetched through the repository
+ * connector, and so from the locations given by the repository layout, in a single batch. An artifact is only
+ * considered deployed if the repository has a matching checksum for every algorithm; any failure to fetch a checksum
+ * other than it not existing is logged and the artifact deployed.
+ */
+final class RemoteChecksums {
+
+    private final Log log;
+
+    private final RepositoryConnectorProvider connectorProvider;
+
+    private final RepositorySystemSession session;
+
+    private final RemoteRepository repository;
+
+    private final List<ChecksumAlgorithmFactory> algorithms;
+
+    private final Path directory;
+
+    /**
+     * @param log the logger
+     * @param connectorProvider the provider of the repository connector
+     * @param session the repository session
+     * @param repository the repository deployed to
+     * @param algorithms the checksum algorithms of the repository
+     * @param directory the directory the remote checksum files are downloaded to
+     */
+    RemoteChecksums(
+            Log log,
+            RepositoryConnectorProvider connectorProvider,
+            RepositorySystemSession session,
+            RemoteRepository repository,
+            List<ChecksumAlgorithmFactory> algorithms,
+            Path directory) {
+        this.log = log;
+        this.connectorProvider = connectorProvider;
+        this.session = session;
+        this.repository = repository;
+        this.algorithms = algorithms;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns those artifacts whose checksums in the repository match the local checksums.
+     *
+     * @param artifacts the artifacts to check, with their hex encoded checksums keyed by algorithm name
+     * @return the artifacts already deployed
+     * @throws IOException if the checksums cannot be fetched or read
+     */
+    Set<Artifact> findDeployed(Map<Artifact, Map<String, String>> artifacts) throws IOException {
+        if (artifacts.isEmpty() || algorithms.isEmpty()) {
+            return Set.of();
+        }
+        Files.createDirectories(directory);
+        Map<Artifact, List<ArtifactDownload>> downloads = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts.keySet()) {
+            List<ArtifactDownload> checksums = new ArrayList<>();
+            for (ChecksumAlgorithmFactory algorithm : algorithms) {
+                // The layout locates artifacts by file name so the download is named as the checksum file.
+                File file = directory.resolve(artifact.getFile().getName() + "." + algorithm.getFileExtension())
+                        .toFile();
+                Files.deleteIfExists(file.toPath());
+                Artifact checksum = new DefaultArtifact(
+                        artifact.getGroupId(),
+                        artifact.getArtifactId(),
+                        artifact.getClassifier(),
+                        artifact.getExtension() + "." + algorithm.getFileExtension(),
+                        artifact.getVersion(),
+                        null,
+                        file);
+                checksums.add(new ArtifactDownload(checksum, null, file, RepositoryPolicy.CHECKSUM_POLICY_IGNORE));
+            }
+            downloads.put(artifact, checksums);
+        }
+
+        try (RepositoryConnector connector = connectorProvider.newRepositoryConnector(session, repository)) {
+            connector.get(downloads.values().stream().flatMap(List::stream).toList(), null);
+        } catch (NoRepositoryConnectorException e) {
+            throw new IOException("Unable to connect to " + repository, e);
+        }
+
+        Set<Artifact> deployed = new HashSet<>();
+        for (Map.Entry<Artifact, List<ArtifactDownload>> entry : downloads.entrySet()) {
+            Map<String, String> local = artifacts.get(entry.getKey());
+            boolean matches = true;
+            for (int i = 0; i < algorithms.size() && matches; i++) {
+                ArtifactDownload download = entry.getValue().get(i);
+                if (download.getException() != null) {
+                    if (!(download.getException() instanceof ArtifactNotFoundException)) {
+                        log.warn(
+                                "Unable to fetch " + download.getFile().getName() + " from " + repository.getUrl()
+                                        + ": " + download.getException().getMessage());
+                    }
+                    matches = false;
+                } else {
+                    matches = read(download.getFile().toPath()).equals(local.get(algorithms.get(i).getName()));
+                }
+            }
+            if (matches) {
+                deployed.add(entry.getKey());
+            }
+        }
+        return deployed;
+    }
+
+    /**
+     * Reads a checksum file which, as written by some tools, may be followed by the name of the file.
+     */
+    private static String read(Path file) throws IOException {
+        String content = Files.readString(file, StandardCharsets.US_ASCII).trim();
+        int end = content.indexOf(' ');
+        return (end < 0 ? content : content.substring(0, end)).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,206 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Generates yum repository metadata for the built rpms, so that the build directory may be used directly as a
+ * repository without running createrepo. Only the lead and headers of each rpm are read; the checksum of each is taken
+ * from the manifest written by the package goal where possible.
+ */
+@Mojo(name = "repodata", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
+public class RepodataMojo extends BaseMojo {
+
+    /**
+     * The directory within the build directory holding the repodata for the rpms as deployed.
+     */
+    static final String DEPLOY_DIRECTORY = "deploy-repodata";
+
+    /**
+     * The file within the deploy directory describing the rpms its repodata was generated for.
+     */
+    static final String DEPLOY_STAMP = "rpms.txt";
+
+    /**
+     * Whether to skip generating the repodata
+     */
+    @Parameter(defaultValue = "false", property = "rpm.repodata.skip")
+    private boolean skip;
+
+    /**
+     * How the repodata is compressed, being one of <code>gz</code>, <code>xz</code> or <code>zstd</code>.
+     */
+    @Parameter(defaultValue = "gz", property = "repodataCompression")
+    private String repodataCompression = "gz";
+
+    /**
+     * The number of rpms whose headers are read concurrently. Zero uses the number of available processors.
+     */
+    @Parameter(defaultValue = "0", property = "repodataThreads")
+    private int repodataThreads;
+
+    /**
+     * Whether to also generate repodata for the rpms as deployed, alongside each other, by the deploy goal, which then
+     * deploys it beneath <code>repodata/</code>.
+     */
+    @Parameter(defaultValue = "false", property = "deployRepodata")
+    private boolean deployRepodata;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping repodata generation");
+            return;
+        }
+        BuildMetrics metrics = new BuildMetrics(project.getId(), "repodata");
+        boolean success = false;
+        try {
+            generate(metrics);
+            success = true;
+        } finally {
+            writeMetrics(metrics, success);
+        }
+    }
+
+    private void generate(BuildMetrics metrics) throws MojoExecutionException {
+        RepodataWriter writer = new RepodataWriter(RepodataWriter.Compression.fromString(repodataCompression));
+        try {
+            List<File> rpms;
+            Map<Path, Map<String, String>> providedChecksums;
+            try (BuildMetrics.Phase phase = metrics.start("scan")) {
+                rpms = findBuiltRPMs();
+                providedChecksums = readProvidedChecksums();
+            }
+            if (rpms.isEmpty()) {
+                throw new MojoExecutionException("No rpms found in " + outputDirectory);
+            }
+
+            List<RepodataPackage> packages;
+            try (BuildMetrics.Phase phase = metrics.start("parse")) {
+                packages = readPackages(rpms, providedChecksums, phase);
+            }
+
+            try (BuildMetrics.Phase phase = metrics.start("write")) {
+                Path output = outputDirectory.toPath();
+                List<Path> files = writer.write(output.resolve("repodata"), packages, RepodataPackage::path);
+                Path deployed = output.resolve(DEPLOY_DIRECTORY);
+                if (deployRepodata) {
+                    files.addAll(writer.write(deployed.resolve("repodata"), packages, RepodataPackage::fileName));
+                    Files.writeString(
+                            deployed.resolve(DEPLOY_STAMP),
+                            describe(output, rpms),
+                            StandardCharsets.UTF_8);
+                } else {
+                    delete(deployed);
+                }
+                files.forEach(phase::addFile);
+            }
+            getLog().info("Generated repodata for " + packages.size() + " rpms in " + outputDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * Reads the headers of the rpms in parallel, hashing any whose checksum is not in the manifest.
+     */
+    private List<RepodataPackage> readPackages(
+            List<File> rpms,
+            Map<Path, Map<String, String>> providedChecksums,
+            BuildMetrics.Phase phase) throws MojoExecutionException {
+        Path output = outputDirectory.toPath();
+        int threads = repodataThreads > 0 ? repodataThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, rpms.size()));
+        try {
+            Map<File, Future<RepodataPackage>> reads = new LinkedHashMap<>();
+            for (File rpm : rpms) {
+                reads.put(rpm, executor.submit(() -> {
+                    Path path = rpm.toPath().toAbsolutePath();
+                    Map<String, String> checksums = providedChecksums.get(path);
+                    String checksum = checksums == null ? null : checksums.get(Checksums.SHA256);
+                    if (checksum == null) {
+                        checksum = Checksums.compute(path, List.of(Checksums.SHA256)).get(Checksums.SHA256);
+                        phase.addFile(path);
+                    }
+                    return RepodataPackage.read(
+                            path,
+                            FilenameUtils.normalize(output.relativize(rpm.toPath()).toString(), true),
+                            checksum);
+                }));
+            }
+            List<RepodataPackage> packages = new ArrayList<>();
+            List<String> failures = new ArrayList<>();
+            for (Map.Entry<File, Future<RepodataPackage>> read : reads.entrySet()) {
+                try {
+                    packages.add(read.getValue().get());
+                    phase.addFiles(1);
+                } catch (ExecutionException e) {
+                    getLog().error("Error reading rpm " + read.getKey(), e.getCause());
+                    failures.add(read.getKey().getName() + " (" + e.getCause().getMessage() + ")");
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException("Unable to read " + failures.size() + " rpms: " + failures);
+            }
+            packages.sort(Comparator.comparing(RepodataPackage::path));
+            return packages;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while reading rpms", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Describes the rpms by their path, size and last modified time, so that the deploy goal can tell whether the
+     * repodata generated for them is still up to date.
+     *
+     * @param outputDirectory the build directory the paths are relative to
+     * @param rpms the rpms
+     * @return one line per rpm, in the order given
+     * @throws IOException if an rpm cannot be read
+     */
+    static String describe(Path outputDirectory, List<File> rpms) throws IOException {
+        StringBuilder description = new StringBuilder();
+        for (File rpm : rpms) {
+            Path path = rpm.toPath();
+            description.append(FilenameUtils.normalize(outputDirectory.relativize(path).toString(), true))
+                    .append(' ')
+                    .append(Files.size(path))
+                    .append(' ')
+                    .append(Files.getLastModifiedTime(path).toMillis())
+                    .append('\n');
+        }
+        return description.toString();
+    }
+
+    private static void delete(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> walk = Files.walk(directory)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+}
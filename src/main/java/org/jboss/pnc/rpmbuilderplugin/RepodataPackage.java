@@ -0,0 +1,295 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The metadata of a single RPM as recorded in yum repodata, read from the lead, signature and header of the package
+ * without reading its payload.
+ *
+ * @param name the package name
+ * @param arch the architecture, <code>src</code> for source packages
+ * @param epoch the epoch
+ * @param version the version
+ * @param release the release
+ * @param checksum the SHA-256 checksum of the whole package, which identifies it in the repodata
+ * @param path the path of the package relative to the repository it is built in
+ * @param fileName the file name of the package
+ * @param summary the summary
+ * @param description the description
+ * @param packager the packager
+ * @param url the upstream URL
+ * @param fileTime the modification time of the package file, in seconds
+ * @param buildTime the build time, in seconds
+ * @param packageSize the size of the package file
+ * @param installedSize the total size of the installed files
+ * @param archiveSize the uncompressed size of the payload
+ * @param license the license
+ * @param vendor the vendor
+ * @param group the group
+ * @param buildHost the host the package was built on
+ * @param sourceRPM the source package, null for source packages
+ * @param headerStart the offset of the main header from the start of the file
+ * @param headerEnd the offset of the payload from the start of the file
+ * @param provides the capabilities provided
+ * @param requires the capabilities required
+ * @param conflicts the capabilities conflicted with
+ * @param obsoletes the capabilities obsoleted
+ * @param recommends the weak capabilities recommended
+ * @param suggests the weak capabilities suggested
+ * @param supplements the weak reverse dependencies supplemented
+ * @param enhances the weak reverse dependencies enhanced
+ * @param files the files in the package
+ * @param changeLogs the change log, newest first
+ */
+record RepodataPackage(
+        String name,
+        String arch,
+        long epoch,
+        String version,
+        String release,
+        String checksum,
+        String path,
+        String fileName,
+        String summary,
+        String description,
+        String packager,
+        String url,
+        long fileTime,
+        long buildTime,
+        long packageSize,
+        long installedSize,
+        long archiveSize,
+        String license,
+        String vendor,
+        String group,
+        String buildHost,
+        String sourceRPM,
+        long headerStart,
+        long headerEnd,
+        List<Dependency> provides,
+        List<Dependency> requires,
+        List<Dependency> conflicts,
+        List<Dependency> obsoletes,
+        List<Dependency> recommends,
+        List<Dependency> suggests,
+        List<Dependency> supplements,
+        List<Dependency> enhances,
+        List<PackageFile> files,
+        List<ChangeLog> changeLogs) {
+
+    private static final int RPMSENSE_LESS = 1 << 1;
+    private static final int RPMSENSE_GREATER = 1 << 2;
+    private static final int RPMSENSE_EQUAL = 1 << 3;
+    private static final int RPMSENSE_PREREQ = 1 << 6;
+    private static final int RPMSENSE_SCRIPT_PRE = 1 << 9;
+    private static final int RPMSENSE_SCRIPT_POST = 1 << 10;
+    private static final int RPMSENSE_RPMLIB = 1 << 24;
+
+    private static final int RPMFILE_GHOST = 1 << 6;
+
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+
+    /**
+     * A dependency, or capability, of a package.
+     *
+     * @param name the capability
+     * @param flags the comparison, being one of <code>EQ</code>, <code>LT</code>, <code>GT</code>, <code>LE</code> or
+     *        <code>GE</code>, or null if unversioned
+     * @param epoch the epoch, null if unversioned
+     * @param version the version, null if unversioned
+     * @param release the release, null if unversioned or not given
+     * @param pre whether this is required before the package is installed
+     */
+    record Dependency(String name, String flags, String epoch, String version, String release, boolean pre) {
+    }
+
+    /**
+     * A file within a package.
+     *
+     * @param path the absolute path of the file
+     * @param type <code>dir</code> or <code>ghost</code>, or null for a regular file
+     */
+    record PackageFile(String path, String type) {
+    }
+
+    /**
+     * A change log entry.
+     *
+     * @param author the author and version
+     * @param date the date in seconds
+     * @param text the text
+     */
+    record ChangeLog(String author, long date, String text) {
+    }
+
+    /**
+     * Reads the metadata of the package.
+     *
+     * @param rpm the package
+     * @param path the path of the package relative to its repository
+     * @param checksum the SHA-256 checksum of the package
+     * @return the metadata
+     * @throws IOException if the package cannot be read
+     */
+    static RepodataPackage read(Path rpm, String path, String checksum) throws IOException {
+        RPMPackage rpmPackage = RPMPackage.read(rpm);
+        RPMHeader header = rpmPackage.getHeader();
+        long archiveSize = header.getNumber(
+                RPMHeader.TAG_ARCHIVESIZE,
+                rpmPackage.getSignature().getNumber(RPMHeader.SIGTAG_PAYLOADSIZE, 0));
+        return new RepodataPackage(
+                rpmPackage.getName(),
+                rpmPackage.getArch(),
+                rpmPackage.getEpoch(),
+                rpmPackage.getVersion(),
+                rpmPackage.getRelease(),
+                checksum,
+                path,
+                rpm.getFileName().toString(),
+                header.getString(RPMHeader.TAG_SUMMARY),
+                header.getString(RPMHeader.TAG_DESCRIPTION),
+                header.getString(RPMHeader.TAG_PACKAGER),
+                header.getString(RPMHeader.TAG_URL),
+                Files.getLastModifiedTime(rpm).toMillis() / 1000,
+                header.getNumber(RPMHeader.TAG_BUILDTIME, 0),
+                Files.size(rpm),
+                header.getNumber(RPMHeader.TAG_SIZE, 0),
+                archiveSize,
+                header.getString(RPMHeader.TAG_LICENSE),
+                header.getString(RPMHeader.TAG_VENDOR),
+                header.getString(RPMHeader.TAG_GROUP),
+                header.getString(RPMHeader.TAG_BUILDHOST),
+                rpmPackage.isSourcePackage() ? null : header.getString(RPMHeader.TAG_SOURCERPM),
+                rpmPackage.getHeaderOffset(),
+                rpmPackage.getPayloadOffset(),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_PROVIDENAME,
+                        RPMHeader.TAG_PROVIDEFLAGS,
+                        RPMHeader.TAG_PROVIDEVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_REQUIRENAME,
+                        RPMHeader.TAG_REQUIREFLAGS,
+                        RPMHeader.TAG_REQUIREVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_CONFLICTNAME,
+                        RPMHeader.TAG_CONFLICTFLAGS,
+                        RPMHeader.TAG_CONFLICTVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_OBSOLETENAME,
+                        RPMHeader.TAG_OBSOLETEFLAGS,
+                        RPMHeader.TAG_OBSOLETEVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_RECOMMENDNAME,
+                        RPMHeader.TAG_RECOMMENDFLAGS,
+                        RPMHeader.TAG_RECOMMENDVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_SUGGESTNAME,
+                        RPMHeader.TAG_SUGGESTFLAGS,
+                        RPMHeader.TAG_SUGGESTVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_SUPPLEMENTNAME,
+                        RPMHeader.TAG_SUPPLEMENTFLAGS,
+                        RPMHeader.TAG_SUPPLEMENTVERSION),
+                readDependencies(
+                        header,
+                        RPMHeader.TAG_ENHANCENAME,
+                        RPMHeader.TAG_ENHANCEFLAGS,
+                        RPMHeader.TAG_ENHANCEVERSION),
+                readFiles(header),
+                readChangeLogs(header));
+    }
+
+    /**
+     * Reads a dependency list. As createrepo does, the dependencies of rpm itself on its own features
+     * (<code>rpmlib(...)</code>) are omitted.
+     */
+    private static List<Dependency> readDependencies(RPMHeader header, int nameTag, int flagsTag, int versionTag)
+            throws IOException {
+        String[] names = header.getStringArray(nameTag);
+        long[] flags = header.getNumberArray(flagsTag);
+        String[] versions = header.getStringArray(versionTag);
+        List<Dependency> dependencies = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            int flag = i < flags.length ? (int) flags[i] : 0;
+            if ((flag & RPMSENSE_RPMLIB) != 0 || names[i].startsWith("rpmlib(")) {
+                continue;
+            }
+            boolean pre = (flag & (RPMSENSE_PREREQ | RPMSENSE_SCRIPT_PRE | RPMSENSE_SCRIPT_POST)) != 0;
+            String version = i < versions.length ? versions[i] : "";
+            if (version.isEmpty()) {
+                dependencies.add(new Dependency(names[i], null, null, null, null, pre));
+                continue;
+            }
+            String epoch = "0";
+            int colon = version.indexOf(':');
+            if (colon >= 0) {
+                epoch = version.substring(0, colon);
+                version = version.substring(colon + 1);
+            }
+            String release = null;
+            int dash = version.lastIndexOf('-');
+            if (dash >= 0) {
+                release = version.substring(dash + 1);
+                version = version.substring(0, dash);
+            }
+            dependencies.add(new Dependency(names[i], toFlags(flag), epoch, version, release, pre));
+        }
+        return dependencies;
+    }
+
+    private static String toFlags(int flags) {
+        return switch (flags & (RPMSENSE_LESS | RPMSENSE_GREATER | RPMSENSE_EQUAL)) {
+            case RPMSENSE_EQUAL -> "EQ";
+            case RPMSENSE_LESS -> "LT";
+            case RPMSENSE_GREATER -> "GT";
+            case RPMSENSE_LESS | RPMSENSE_EQUAL -> "LE";
+            case RPMSENSE_GREATER | RPMSENSE_EQUAL -> "GE";
+            default -> null;
+        };
+    }
+
+    private static List<PackageFile> readFiles(RPMHeader header) throws IOException {
+        String[] baseNames = header.getStringArray(RPMHeader.TAG_BASENAMES);
+        String[] dirNames = header.getStringArray(RPMHeader.TAG_DIRNAMES);
+        long[] dirIndexes = header.getNumberArray(RPMHeader.TAG_DIRINDEXES);
+        long[] modes = header.getNumberArray(RPMHeader.TAG_FILEMODES);
+        long[] flags = header.getNumberArray(RPMHeader.TAG_FILEFLAGS);
+        List<PackageFile> files = new ArrayList<>(baseNames.length);
+        for (int i = 0; i < baseNames.length; i++) {
+            String type = null;
+            if (i < modes.length && (modes[i] & S_IFMT) == S_IFDIR) {
+                type = "dir";
+            } else if (i < flags.length && (flags[i] & RPMFILE_GHOST) != 0) {
+                type = "ghost";
+            }
+            if (i >= dirIndexes.length || dirIndexes[i] >= dirNames.length) {
+                throw new IOException("Corrupt RPM header: no directory for file " + baseNames[i]);
+            }
+            files.add(new PackageFile(dirNames[(int) dirIndexes[i]] + baseNames[i], type));
+        }
+        return files;
+    }
+
+    private static List<ChangeLog> readChangeLogs(RPMHeader header) throws IOException {
+        String[] names = header.getStringArray(RPMHeader.TAG_CHANGELOGNAME);
+        long[] times = header.getNumberArray(RPMHeader.TAG_CHANGELOGTIME);
+        String[] texts = header.getStringArray(RPMHeader.TAG_CHANGELOGTEXT);
+        List<ChangeLog> changeLogs = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length && i < times.length && i < texts.length; i++) {
+            changeLogs.add(new ChangeLog(names[i], times[i], texts[i]));
+        }
+        return changeLogs;
+    }
+}
@@ -0,0 +1,406 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Writes yum repository metadata, as createrepo does, for packages whose metadata has already been read. The
+ * <code>primary</code>, <code>filelists</code> and <code>other</code> files are each streamed through the compressor
+ * into a file named after its checksum, and then <code>repomd.xml</code>, which indexes them, is written.
+ */
+final class RepodataWriter {
+
+    /**
+     * How the metadata files are compressed.
+     */
+    enum Compression {
+        GZ(".gz"),
+        XZ(".xz"),
+        ZSTD(".zst");
+
+        private final String extension;
+
+        Compression(String extension) {
+            this.extension = extension;
+        }
+
+        OutputStream open(OutputStream out) throws IOException {
+            return switch (this) {
+                case GZ -> new GZIPOutputStream(out, 65536);
+                case XZ -> new XZCompressorOutputStream(out);
+                case ZSTD -> new ZstdCompressorOutputStream(out);
+            };
+        }
+
+        static Compression fromString(String value) throws MojoExecutionException {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(
+                        "Unknown repodata compression '" + value + "'; expected one of gz, xz or zstd");
+            }
+        }
+    }
+
+    /**
+     * A metadata file as indexed by <code>repomd.xml</code>.
+     */
+    record DataFile(String type, Path file, String checksum, String openChecksum, long size, long openSize) {
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void write(XMLStreamWriter xml) throws XMLStreamException;
+    }
+
+    static final String REPOMD = "repomd.xml";
+
+    private static final String COMMON_NS = "http://linux.duke.edu/metadata/common";
+    private static final String RPM_NS = "http://linux.duke.edu/metadata/rpm";
+    private static final String FILELISTS_NS = "http://linux.duke.edu/metadata/filelists";
+    private static final String OTHER_NS = "http://linux.duke.edu/metadata/other";
+    private static final String REPO_NS = "http://linux.duke.edu/metadata/repo";
+
+    /**
+     * The number of change log entries of each package recorded, as is the default for createrepo.
+     */
+    private static final int CHANGELOG_LIMIT = 10;
+
+    private final XMLOutputFactory factory = XMLOutputFactory.newFactory();
+
+    private final Compression compression;
+
+    RepodataWriter(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Writes the metadata into the directory, replacing any metadata already there.
+     *
+     * @param directory the <code>repodata</code> directory
+     * @param packages the packages in the repository
+     * @param location the location of each package relative to the parent of the <code>repodata</code> directory
+     * @return the files written, the last being <code>repomd.xml</code>
+     * @throws IOException if the metadata cannot be written
+     */
+    List<Path> write(Path directory, List<RepodataPackage> packages, Function<RepodataPackage, String> location)
+            throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> existing = Files.list(directory)) {
+            for (Path file : existing.toList()) {
+                Files.delete(file);
+            }
+        }
+        try {
+            List<DataFile> data = new ArrayList<>();
+            data.add(write(directory, "primary", xml -> writePrimary(xml, packages, location)));
+            data.add(write(directory, "filelists", xml -> writeFileLists(xml, packages)));
+            data.add(write(directory, "other", xml -> writeOther(xml, packages)));
+            Path repomd = directory.resolve(REPOMD);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(repomd))) {
+                writeDocument(out, xml -> writeRepomd(xml, data));
+            }
+            List<Path> files = new ArrayList<>(data.stream().map(DataFile::file).toList());
+            files.add(repomd);
+            return files;
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write repodata", e);
+        }
+    }
+
+    private DataFile write(Path directory, String type, Body body) throws IOException, XMLStreamException {
+        Path temporary = Files.createTempFile(directory, "." + type, ".tmp");
+        MessageDigest checksum = Checksums.newDigest(Checksums.SHA256);
+        MessageDigest openChecksum = Checksums.newDigest(Checksums.SHA256);
+        long[] openSize = new long[1];
+        try {
+            try (OutputStream file = new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 65536),
+                    checksum);
+                    OutputStream compressed = compression.open(file);
+                    OutputStream open = new FilterOutputStream(new DigestOutputStream(compressed, openChecksum)) {
+                        @Override
+                        public void write(byte[] bytes, int offset, int length) throws IOException {
+                            out.write(bytes, offset, length);
+                            openSize[0] += length;
+                        }
+
+                        @Override
+                        public void write(int b) throws IOException {
+                            out.write(b);
+                            openSize[0]++;
+                        }
+                    }) {
+                writeDocument(new BufferedOutputStream(open, 65536), body);
+            }
+            String hex = Checksums.toHex(checksum.digest());
+            Path target = directory.resolve(hex + "-" + type + ".xml" + compression.extension);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            return new DataFile(
+                    type,
+                    target,
+                    hex,
+                    Checksums.toHex(openChecksum.digest()),
+                    Files.size(target),
+                    openSize[0]);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void writeDocument(OutputStream out, Body body) throws IOException, XMLStreamException {
+        XMLStreamWriter xml = factory.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeCharacters("\n");
+        body.write(xml);
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.close();
+        out.flush();
+    }
+
+    private void writePrimary(
+            XMLStreamWriter xml,
+            List<RepodataPackage> packages,
+            Function<RepodataPackage, String> location) throws XMLStreamException {
+        xml.writeStartElement("metadata");
+        xml.writeDefaultNamespace(COMMON_NS);
+        xml.writeNamespace("rpm", RPM_NS);
+        xml.writeAttribute("packages", String.valueOf(packages.size()));
+        for (RepodataPackage rpm : packages) {
+            xml.writeCharacters("\n");
+            xml.writeStartElement("package");
+            xml.writeAttribute("type", "rpm");
+            element(xml, "name", rpm.name());
+            element(xml, "arch", rpm.arch());
+            writeVersion(xml, rpm);
+            xml.writeStartElement("checksum");
+            xml.writeAttribute("type", "sha256");
+            xml.writeAttribute("pkgid", "YES");
+            xml.writeCharacters(rpm.checksum());
+            xml.writeEndElement();
+            element(xml, "summary", rpm.summary());
+            element(xml, "description", rpm.description());
+            element(xml, "packager", rpm.packager());
+            element(xml, "url", rpm.url());
+            xml.writeEmptyElement("time");
+            xml.writeAttribute("file", String.valueOf(rpm.fileTime()));
+            xml.writeAttribute("build", String.valueOf(rpm.buildTime()));
+            xml.writeEmptyElement("size");
+            xml.writeAttribute("package", String.valueOf(rpm.packageSize()));
+            xml.writeAttribute("installed", String.valueOf(rpm.installedSize()));
+            xml.writeAttribute("archive", String.valueOf(rpm.archiveSize()));
+            xml.writeEmptyElement("location");
+            xml.writeAttribute("href", location.apply(rpm));
+
+            xml.writeStartElement("format");
+            rpmElement(xml, "license", rpm.license());
+            rpmElement(xml, "vendor", rpm.vendor());
+            rpmElement(xml, "group", rpm.group());
+            rpmElement(xml, "buildhost", rpm.buildHost());
+            rpmElement(xml, "sourcerpm", rpm.sourceRPM());
+            xml.writeEmptyElement("rpm", "header-range", RPM_NS);
+            xml.writeAttribute("start", String.valueOf(rpm.headerStart()));
+            xml.writeAttribute("end", String.valueOf(rpm.headerEnd()));
+            writeDependencies(xml, "provides", rpm.provides(), false);
+            writeDependencies(xml, "requires", rpm.requires(), true);
+            writeDependencies(xml, "conflicts", rpm.conflicts(), false);
+            writeDependencies(xml, "obsoletes", rpm.obsoletes(), false);
+            writeDependencies(xml, "suggests", rpm.suggests(), false);
+            writeDependencies(xml, "enhances", rpm.enhances(), false);
+            writeDependencies(xml, "recommends", rpm.recommends(), false);
+            writeDependencies(xml, "supplements", rpm.supplements(), false);
+            // As with createrepo only the files most commonly depended upon are listed in the primary metadata.
+            for (RepodataPackage.PackageFile file : rpm.files()) {
+                if (isPrimaryFile(file.path())) {
+                    writeFile(xml, file);
+                }
+            }
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+    }
+
+    private void writeFileLists(XMLStreamWriter xml, List<RepodataPackage> packages) throws XMLStreamException {
+        xml.writeStartElement("filelists");
+        xml.writeDefaultNamespace(FILELISTS_NS);
+        xml.writeAttribute("packages", String.valueOf(packages.size()));
+        for (RepodataPackage rpm : packages) {
+            xml.writeCharacters("\n");
+            writePackageStart(xml, rpm);
+            for (RepodataPackage.PackageFile file : rpm.files()) {
+                writeFile(xml, file);
+            }
+            xml.writeEndElement();
+        }
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+    }
+
+    private void writeOther(XMLStreamWriter xml, List<RepodataPackage> packages) throws XMLStreamException {
+        xml.writeStartElement("otherdata");
+        xml.writeDefaultNamespace(OTHER_NS);
+        xml.writeAttribute("packages", String.valueOf(packages.size()));
+        for (RepodataPackage rpm : packages) {
+            xml.writeCharacters("\n");
+            writePackageStart(xml, rpm);
+            // The header holds the newest entry first; the most recent are written oldest first.
+            List<RepodataPackage.ChangeLog> changeLogs = rpm.changeLogs()
+                    .subList(0, Math.min(CHANGELOG_LIMIT, rpm.changeLogs().size()));
+            for (int i = changeLogs.size() - 1; i >= 0; i--) {
+                xml.writeStartElement("changelog");
+                xml.writeAttribute("author", sanitize(changeLogs.get(i).author()));
+                xml.writeAttribute("date", String.valueOf(changeLogs.get(i).date()));
+                xml.writeCharacters(sanitize(changeLogs.get(i).text()));
+                xml.writeEndElement();
+            }
+            xml.writeEndElement();
+        }
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+    }
+
+    private void writeRepomd(XMLStreamWriter xml, List<DataFile> data) throws XMLStreamException {
+        xml.writeStartElement("repomd");
+        xml.writeDefaultNamespace(REPO_NS);
+        xml.writeNamespace("rpm", RPM_NS);
+        long timestamp = System.currentTimeMillis() / 1000;
+        element(xml, "revision", String.valueOf(timestamp));
+        for (DataFile file : data) {
+            xml.writeCharacters("\n");
+            xml.writeStartElement("data");
+            xml.writeAttribute("type", file.type());
+            xml.writeStartElement("checksum");
+            xml.writeAttribute("type", "sha256");
+            xml.writeCharacters(file.checksum());
+            xml.writeEndElement();
+            xml.writeStartElement("open-checksum");
+            xml.writeAttribute("type", "sha256");
+            xml.writeCharacters(file.openChecksum());
+            xml.writeEndElement();
+            xml.writeEmptyElement("location");
+            xml.writeAttribute("href", "repodata/" + file.file().getFileName());
+            element(xml, "timestamp", String.valueOf(timestamp));
+            element(xml, "size", String.valueOf(file.size()));
+            element(xml, "open-size", String.valueOf(file.openSize()));
+            xml.writeEndElement();
+        }
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+    }
+
+    private void writePackageStart(XMLStreamWriter xml, RepodataPackage rpm) throws XMLStreamException {
+        xml.writeStartElement("package");
+        xml.writeAttribute("pkgid", rpm.checksum());
+        xml.writeAttribute("name", rpm.name());
+        xml.writeAttribute("arch", rpm.arch());
+        writeVersion(xml, rpm);
+    }
+
+    private void writeVersion(XMLStreamWriter xml, RepodataPackage rpm) throws XMLStreamException {
+        xml.writeEmptyElement("version");
+        xml.writeAttribute("epoch", String.valueOf(rpm.epoch()));
+        xml.writeAttribute("ver", rpm.version());
+        xml.writeAttribute("rel", rpm.release());
+    }
+
+    private void writeDependencies(
+            XMLStreamWriter xml,
+            String name,
+            List<RepodataPackage.Dependency> dependencies,
+            boolean requires) throws XMLStreamException {
+        if (dependencies.isEmpty()) {
+            return;
+        }
+        xml.writeStartElement("rpm", name, RPM_NS);
+        for (RepodataPackage.Dependency dependency : dependencies) {
+            xml.writeEmptyElement("rpm", "entry", RPM_NS);
+            xml.writeAttribute("name", dependency.name());
+            if (dependency.flags() != null) {
+                xml.writeAttribute("flags", dependency.flags());
+                xml.writeAttribute("epoch", dependency.epoch());
+                xml.writeAttribute("ver", dependency.version());
+                if (dependency.release() != null) {
+                    xml.writeAttribute("rel", dependency.release());
+                }
+            }
+            if (requires && dependency.pre()) {
+                xml.writeAttribute("pre", "1");
+            }
+        }
+        xml.writeEndElement();
+    }
+
+    private void writeFile(XMLStreamWriter xml, RepodataPackage.PackageFile file) throws XMLStreamException {
+        xml.writeStartElement("file");
+        if (file.type() != null) {
+            xml.writeAttribute("type", file.type());
+        }
+        xml.writeCharacters(sanitize(file.path()));
+        xml.writeEndElement();
+    }
+
+    private static void element(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+        if (value == null || value.isEmpty()) {
+            xml.writeEmptyElement(name);
+        } else {
+            xml.writeStartElement(name);
+            xml.writeCharacters(sanitize(value));
+            xml.writeEndElement();
+        }
+    }
+
+    private static void rpmElement(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+        if (value == null || value.isEmpty()) {
+            xml.writeEmptyElement("rpm", name, RPM_NS);
+        } else {
+            xml.writeStartElement("rpm", name, RPM_NS);
+            xml.writeCharacters(sanitize(value));
+            xml.writeEndElement();
+        }
+    }
+
+    private static boolean isPrimaryFile(String path) {
+        return path.startsWith("/etc/") || path.contains("bin/") || path.equals("/usr/lib/sendmail");
+    }
+
+    /**
+     * Removes the control characters that may not appear in XML, which header text occasionally contains.
+     */
+    private static String sanitize(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                StringBuilder result = new StringBuilder(value.length());
+                value.chars()
+                        .filter(ch -> ch >= 0x20 || ch == '\t' || ch == '\n' || ch == '\r')
+                        .forEach(ch -> result.append((char) ch));
+                return result.toString();
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Rewrites a spec file by streaming it through an ordered chain of {@link SpecTransformer}s. The spec is read and
+ * written once, a line at a time, however many transformers there are.
+ */
+final class SpecPipeline {
+
+    private final Charset charset;
+
+    private final List<SpecTransformer> transformers = new ArrayList<>();
+
+    /**
+     * @param charset the encoding of the spec file
+     */
+    SpecPipeline(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Appends a transformer to the chain; it receives the output of those added before it.
+     */
+    SpecPipeline add(SpecTransformer transformer) {
+        transformers.add(transformer);
+        return this;
+    }
+
+    boolean isEmpty() {
+        return transformers.isEmpty();
+    }
+
+    /**
+     * Streams the source through the transformers into the target. The target is written to a temporary file which
+     * replaces it once complete so the source and target may be the same file.
+     *
+     * @param source the spec file to read
+     * @param target the spec file to write
+     * @throws IOException if the spec cannot be read or written
+     */
+    void run(Path source, Path target) throws IOException {
+        Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), ".spec", ".tmp");
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(source, charset);
+                    BufferedWriter writer = Files.newBufferedWriter(temporary, charset)) {
+                Consumer<String> chain = line -> {
+                    try {
+                        writer.write(line);
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                // Link the transformers from the last to the first so each feeds the next.
+                List<Runnable> finishers = new ArrayList<>();
+                for (int i = transformers.size() - 1; i >= 0; i--) {
+                    SpecTransformer transformer = transformers.get(i);
+                    Consumer<String> next = chain;
+                    chain = line -> transformer.transform(line, next);
+                    finishers.add(0, () -> transformer.finish(next));
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    chain.accept(line);
+                }
+                finishers.forEach(Runnable::run);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import groovy.lang.Closure;
+
+/**
+ * Transforms a spec file one line at a time as it is streamed through a {@link SpecPipeline}. A transformer may emit
+ * any number of lines for each line it receives, so lines may be replaced, removed or inserted.
+ */
+@FunctionalInterface
+interface SpecTransformer {
+
+    /**
+     * Transforms a single line.
+     *
+     * @param line the line, without its terminator
+     * @param out receives the resulting lines
+     */
+    void transform(String line, Consumer<String> out);
+
+    /**
+     * Called once after the last line, allowing lines to be appended.
+     *
+     * @param out receives any appended lines
+     */
+    default void finish(Consumer<String> out) {
+    }
+
+    /**
+     * Adds an entry below the <code>%changelog</code> section header.
+     *
+     * @param title the entry title, e.g. <code>* Mon Jan 01 2024 someone@example.com - 1.0-1</code>
+     * @param message the entry message
+     */
+    static SpecTransformer changelog(String title, String message) {
+        return (line, out) -> {
+            out.accept(line);
+            if (line.startsWith("%changelog")) {
+                out.accept(title);
+                out.accept(message);
+                out.accept("");
+            }
+        };
+    }
+
+    /**
+     * Inserts a <code>%global</code> definition for each macro before the first line of the spec so that they are
+     * recorded within the spec (and so the source RPM) rather than only passed on the rpmbuild command line.
+     *
+     * @param macros the macro values keyed by name
+     */
+    static SpecTransformer defines(Map<String, String> macros) {
+        return new SpecTransformer() {
+            private boolean started;
+
+            @Override
+            public void transform(String line, Consumer<String> out) {
+                if (!started) {
+                    started = true;
+                    macros.forEach((name, value) -> out.accept("%global " + name + " " + value));
+                }
+                out.accept(line);
+            }
+
+            @Override
+            public void finish(Consumer<String> out) {
+                if (!started) {
+                    macros.forEach((name, value) -> out.accept("%global " + name + " " + value));
+                }
+            }
+        };
+    }
+
+    /**
+     * Replaces the value of the first occurrence of a preamble tag such as <code>Version</code> or
+     * <code>Release</code>, preserving the whitespace following the tag name.
+     *
+     * @param tag the tag name, matched case-insensitively as rpmbuild does
+     * @param value the new value
+     */
+    static SpecTransformer stamp(String tag, String value) {
+        Pattern pattern = Pattern.compile("^(" + Pattern.quote(tag) + ":\\s*).*$", Pattern.CASE_INSENSITIVE);
+        return new SpecTransformer() {
+            private boolean stamped;
+
+            @Override
+            public void transform(String line, Consumer<String> out) {
+                Matcher matcher = pattern.matcher(line);
+                if (!stamped && matcher.matches()) {
+                    stamped = true;
+                    out.accept(matcher.group(1) + value);
+                } else {
+                    out.accept(line);
+                }
+            }
+        };
+    }
+
+    /**
+     * Adapts a groovy closure which is called with each line. It may return a string to replace the line, a
+     * collection of lines, or null to remove the line.
+     */
+    static SpecTransformer groovy(Closure<?> closure) {
+        return (line, out) -> {
+            Object result = closure.call(line);
+            if (result instanceof Collection<?> lines) {
+                lines.forEach(l -> out.accept(String.valueOf(l)));
+            } else if (result != null) {
+                out.accept(result.toString());
+            }
+        };
+    }
+}
@@ -0,0 +1,212 @@
+package org.jboss.pnc.rpmbuilderplugin;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * Builds the RPMs as the package goal does and then keeps running, rebuilding them whenever the spec file or any other
+ * source within the working directory changes. Each rebuild patches the spec file again, runs rpmbuild and refreshes
+ * the zip; the dependency RPMs are only installed by the first build. Changes arriving in a burst are debounced into a
+ * single rebuild, and a rebuild still running when further changes arrive is cancelled. Nothing is attached to the
+ * project. The goal runs until Maven is interrupted or, if set, <code>watchTimeout</code> elapses.
+ */
+@Mojo(name = "watch", threadSafe = true)
+public class WatchMojo extends RPMBuilder {
+
+    /**
+     * The time, in milliseconds, for which the working directory must be unchanged before a rebuild starts.
+     */
+    @Parameter(defaultValue = "500", property = "watchDebounce")
+    private long watchDebounce;
+
+    /**
+     * The time, in seconds, after which the goal stops watching, once any build in progress completes. By default it
+     * watches until Maven is interrupted.
+     */
+    @Parameter(defaultValue = "0", property = "watchTimeout")
+    private long watchTimeout;
+
+    private volatile boolean cancelled;
+
+    private boolean installed;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        Path root = workingDirectory.toPath().toAbsolutePath();
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpm-builder-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (WatchService watcher = root.getFileSystem().newWatchService()) {
+            register(watcher, root);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(watchTimeout);
+            Future<?> build = executor.submit(this::rebuild);
+            while (true) {
+                WatchKey next = watchTimeout > 0
+                        ? watcher.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                        : watcher.take();
+                if (next == null) {
+                    await(build);
+                    getLog().info("Stopped watching after " + watchTimeout + " s");
+                    return;
+                }
+                Set<String> changes = new TreeSet<>();
+                poll(watcher, next, root, changes);
+                if (changes.isEmpty()) {
+                    continue;
+                }
+                if (!build.isDone()) {
+                    getLog().info("Cancelling the build as the sources have changed");
+                    cancelled = true;
+                }
+                WatchKey key;
+                while ((key = watcher.poll(watchDebounce, TimeUnit.MILLISECONDS)) != null) {
+                    poll(watcher, key, root, changes);
+                }
+                await(build);
+                getLog().info(
+                        "Rebuilding as " + changes.stream().limit(5).toList()
+                                + (changes.size() > 5 ? " and " + (changes.size() - 5) + " more" : "") + " changed");
+                cancelled = false;
+                build = executor.submit(this::rebuild);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to watch " + root, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while watching " + root, e);
+        } finally {
+            cancelled = true;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the build to complete.
+     */
+    private static void await(Future<?> build) throws InterruptedException {
+        try {
+            build.get();
+        } catch (ExecutionException e) {
+            // The rebuild reports its own failures.
+        }
+    }
+
+    /**
+     * Builds the RPMs, logging rather than throwing any failure so that the next change is still built.
+     */
+    private Void rebuild() {
+        long start = System.nanoTime();
+        BuildMetrics metrics = new BuildMetrics(project.getId(), "watch");
+        boolean success = false;
+        try {
+            build(metrics);
+            success = true;
+            getLog().info(
+                    "Built in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms; watching "
+                            + workingDirectory + " for changes");
+        } catch (MojoExecutionException | RuntimeException e) {
+            if (cancelled) {
+                getLog().info("Cancelled the build");
+            } else {
+                getLog().error("Build failed; watching " + workingDirectory + " for changes", e);
+            }
+        } finally {
+            writeMetrics(metrics, success);
+        }
+        return null;
+    }
+
+    /**
+     * Registers the directory, and each directory below it that is not excluded from the build, with the watcher.
+     */
+    private void register(WatchService watcher, Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(directory) && isExcludedSource(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dir.register(
+                        watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Adds the sources changed by the events of the key, relative to the root, registering any directory created.
+     */
+    private void poll(WatchService watcher, WatchKey key, Path root, Set<String> changes) throws IOException {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so it is only known that something within the directory changed.
+                changes.add(directory.equals(root) ? "." : root.relativize(directory).toString());
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            if (isExcludedSource(file)) {
+                continue;
+            }
+            getLog().debug("Watched " + event.kind().name() + " of " + file);
+            changes.add(root.relativize(file).toString());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                register(watcher, file);
+            }
+        }
+        key.reset();
+    }
+
+    @Override
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * The dependency RPMs are not watched and so only installed once.
+     */
+    @Override
+    void installDependencies(BuildMetrics metrics, List<Artifact> dependencyArtifacts)
+            throws MojoExecutionException {
+        if (installed) {
+            getLog().info("Dependency rpms were installed by the first build");
+            return;
+        }
+        super.installDependencies(metrics, dependencyArtifacts);
+        installed = true;
+    }
+
+    /**
+     * The outputs are refreshed in place; as the goal never completes there is nothing for them to be attached to.
+     */
+    @Override
+    void attach(List<Path> targetSpecFiles, Path zip, int rpmCount, BuildMode mode) {
+        getLog().info("Built " + rpmCount + " rpms" + (zip != null ? " into " + zip.getFileName() : ""));
+    }
+}